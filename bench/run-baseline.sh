@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the engine and the JMH module, then runs every benchmark with the GC profiler and
+# writes the results to bench/baseline/<name>.json (default name: current commit).
+# Compare two runs with any JMH result viewer, or: diff <(jq ...) <(jq ...)
+set -e
+cd "$(dirname "$0")/.."
+name=${1:-$(git rev-parse --short HEAD)}
+if [ $# -gt 0 ]; then shift; fi
+mvn -B -q install -DskipTests
+mvn -B -q -f bench/pom.xml package
+mkdir -p bench/baseline
+java -jar bench/target/benchmarks.jar -prof gc -rf json -rff "bench/baseline/$name.json" "$@"
+echo "results in bench/baseline/$name.json"
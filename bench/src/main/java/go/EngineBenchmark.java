@@ -0,0 +1,87 @@
+package go;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmarks of the engine primitives on one mid-game position per board size and
+ * stone count. The class lives in package go to reach the package-private engine classes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+    @Param({"15", "19"})
+    int size;
+
+    @Param({"20", "40"})
+    int stones;
+
+    private Board board;
+    private int[][] matrix;
+    // cells of all stones as {x, y, colour}
+    private int[][] stoneCells;
+
+    @Setup
+    public void setUp() {
+        board = ParallelSearchBenchmark.randomPosition(size, stones, 42);
+        matrix = board.getBoardMatrix();
+        stoneCells = new int[board.getStoneCount()][];
+        int i = 0;
+        for (int y = 0; y < size; y++) for (int x = 0; x < size; x++)
+            if (matrix[y][x] != 0) stoneCells[i++] = new int[]{x, y, matrix[y][x]};
+    }
+
+    @Benchmark
+    public Object checkGenerateMoves() {
+        return Check.generateMoves(matrix);
+    }
+
+    /** Check.win through every stone of the position. */
+    @Benchmark
+    public int checkWin() {
+        int wins = 0;
+        for (int[] s : stoneCells) if (Check.win(matrix, s[0], s[1], s[2])) wins++;
+        return wins;
+    }
+
+    @Benchmark
+    public boolean hasFiveInARow() {
+        return Minimax.hasFiveInARow(board, true) | Minimax.hasFiveInARow(board, false);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return Minimax.evaluate(board, false);
+    }
+
+    @Benchmark
+    public int getScore() {
+        return Minimax.getScore(board, true, true) + Minimax.getScore(board, false, true);
+    }
+
+    /** Full rescan of the line bitboards that getScore keeps incrementally. */
+    @Benchmark
+    public int scanLines() {
+        return Minimax.scanLines(board, true, true) + Minimax.scanLines(board, false, true);
+    }
+
+    @Benchmark
+    public Board boardCopy() {
+        return new Board(board);
+    }
+}
@@ -0,0 +1,72 @@
+package go;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fixed-depth calculateNextMove over a corpus of mid-game positions. Every invocation searches
+ * all positions with fresh engines, so no transposition table entries carry over; the engines'
+ * tables are allocated in the per-invocation setup and show up in gc.alloc.rate.norm.
+ *
+ * The positions have no forced win for either side and the threat solver is off: random
+ * positions are mostly won by force, and then the solver answers with no alpha-beta search at
+ * all, within a wall-clock limit rather than a fixed amount of work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    private static final int POSITIONS = 4;
+    private static final int TT_MEGABYTES = 16;
+
+    @Param({"15", "19"})
+    int size;
+
+    @Param({"3", "4"})
+    int depth;
+
+    private Board[] positions;
+    private Minimax[] engines;
+
+    @Setup
+    public void setUp() {
+        positions = new Board[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++)
+            positions[i] = ParallelSearchBenchmark.quietPosition(size, 16 + 8 * i, 1000 + i);
+    }
+
+    @Setup(Level.Invocation)
+    public void newEngines() {
+        engines = new Minimax[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            Board b = positions[i];
+            engines[i] = new Minimax(b, b.getStoneCount() % 2 == 1, 0, TT_MEGABYTES);
+            engines[i].setThreatSearch(false);
+        }
+    }
+
+    @Benchmark
+    public int calculateNextMove() {
+        int sum = 0;
+        for (Minimax m : engines) {
+            int[] mv = m.calculateNextMove(depth);
+            sum += mv[0] * 64 + mv[1];
+        }
+        return sum;
+    }
+}
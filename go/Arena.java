@@ -0,0 +1,282 @@
+package go;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless engine-vs-engine matches. Plays many games between two engine configurations on a
+ * thread pool and reports the result, the Elo difference of A over B with a 95% confidence
+ * interval, nodes (or playouts) per second and per-move latency percentiles. Uses no AWT classes.
+ *
+ * Every random opening is played twice with the colours swapped. Black moves first. An engine
+ * that returns no move or an illegal one loses the game, and such forfeits are reported apart.
+ *
+ * Usage: java go.Arena [key=value ...]
+ *   games=200        number of games (rounded up to an even number)
+ *   size=15,19       board sizes, used in turn
+ *   a=depth:4        engine A: depth:N for a fixed depth, time:MS[:maxDepth] for a time budget;
+ *                    a trailing :selective turns on selective search; mcts:MS for Monte Carlo
+ *                    tree search with a time budget
+ *   b=depth:3        engine B, same format
+ *   threads=1        search threads of each engine
+ *   parallel=N       games played at once (default: number of cores)
+ *   opening=4        random stones placed before the engines start; 0 starts from the empty board
+ *   tt=8             transposition table (or MCTS node pool) megabytes per engine
+ *   seed=1           seed of the openings
+ *   vary=0           Minimax moves per game, from the start, picked at random among the best
+ *                    three moves of a multi-PV search that score within VARY_MARGIN of the best
+ */
+public class Arena {
+    private static final int MAX_DEPTH = 20;
+    // lines of the multi-PV search behind varied moves, and how much worse than the best they may be
+    private static final int VARY_LINES = 3;
+    private static final int VARY_MARGIN = 64;
+
+    /**
+     * One engine configuration: Minimax with a fixed depth, or with a time budget per move and a
+     * depth cap, optionally with selective search; or MonteCarlo with a time budget.
+     */
+    static final class EngineSpec {
+        final int depth;
+        final long millis;
+        final boolean selective, mcts;
+
+        EngineSpec(int depth, long millis, boolean selective, boolean mcts) {
+            this.depth = depth;
+            this.millis = millis;
+            this.selective = selective;
+            this.mcts = mcts;
+        }
+
+        static EngineSpec parse(String s) {
+            boolean selective = s.endsWith(":selective");
+            String[] parts = (selective ? s.substring(0, s.length() - ":selective".length()) : s).split(":");
+            if (parts.length >= 2 && parts[0].equals("depth"))
+                return new EngineSpec(Integer.parseInt(parts[1]), 0, selective, false);
+            if (parts.length >= 2 && parts[0].equals("time"))
+                return new EngineSpec(parts.length > 2 ? Integer.parseInt(parts[2]) : MAX_DEPTH, Long.parseLong(parts[1]), selective, false);
+            if (parts.length == 2 && parts[0].equals("mcts") && !selective)
+                return new EngineSpec(MAX_DEPTH, Long.parseLong(parts[1]), false, true);
+            throw new IllegalArgumentException("Engine must be depth:N or time:MS[:maxDepth], optionally :selective, or mcts:MS, got " + s);
+        }
+
+        Engine create(Position board, boolean white, int megabytes) {
+            if (mcts) return new MonteCarlo(board, white, megabytes);
+            Minimax m = new Minimax(board, white, 0, megabytes);
+            m.setSelectiveSearch(selective);
+            return m;
+        }
+
+        @Override public String toString() {
+            if (mcts) return "MCTS " + millis + " ms";
+            return (millis > 0 ? millis + " ms (max depth " + depth + ")" : "depth " + depth) + (selective ? ", selective" : "");
+        }
+    }
+
+    /** Outcome of one game from A's point of view, with the per-move statistics of both sides. */
+    static final class GameResult {
+        double score;                       // 1 win, 0.5 draw, 0 loss for A
+        int forfeit = -1;                   // side that returned no move or an illegal one, else -1
+        final long[] nodes = new long[2];   // [0] = A, [1] = B
+        final long[] nanos = new long[2];
+        final List<List<Long>> latencies = List.of(new ArrayList<>(), new ArrayList<>());
+    }
+
+    private final EngineSpec[] engines;
+    private final int opening, ttMegabytes, threads, vary;
+
+    Arena(EngineSpec a, EngineSpec b, int opening, int ttMegabytes, int threads, int vary) {
+        this.engines = new EngineSpec[]{a, b};
+        this.opening = opening;
+        this.ttMegabytes = ttMegabytes;
+        this.threads = threads;
+        this.vary = vary;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 200, parallel = Runtime.getRuntime().availableProcessors(), opening = 4, tt = 8, threads = 1, vary = 0;
+        long seed = 1;
+        int[] sizes = {15, 19};
+        EngineSpec a = new EngineSpec(4, 0, false, false), b = new EngineSpec(3, 0, false, false);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "games": games = Integer.parseInt(value); break;
+                case "size": sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "a": a = EngineSpec.parse(value); break;
+                case "b": b = EngineSpec.parse(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "parallel": parallel = Integer.parseInt(value); break;
+                case "opening": opening = Integer.parseInt(value); break;
+                case "tt": tt = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "vary": vary = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        int pairs = (games + 1) / 2;
+        System.out.printf("A: %s, B: %s, %d games, sizes %s, %d in parallel%n",
+                a, b, 2 * pairs, Arrays.toString(sizes), parallel);
+        new Arena(a, b, opening, tt, threads, vary).run(pairs, sizes, parallel, seed);
+    }
+
+    void run(int pairs, int[] sizes, int parallel, long seed) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<GameResult>> futures = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        int total = 2 * pairs;
+        long start = System.nanoTime();
+        for (int i = 0; i < pairs; i++) {
+            int size = sizes[i % sizes.length];
+            long gameSeed = seed + i;
+            int[] moves = randomOpening(size, opening, gameSeed);
+            for (boolean aBlack : new boolean[]{true, false}) {
+                futures.add(pool.submit(() -> {
+                    GameResult r = play(size, moves, aBlack, gameSeed);
+                    int d = done.incrementAndGet();
+                    if (d % Math.max(1, total / 10) == 0) System.out.printf("  %d/%d games%n", d, total);
+                    return r;
+                }));
+            }
+        }
+        List<GameResult> results = new ArrayList<>();
+        for (Future<GameResult> f : futures) results.add(f.get());
+        pool.shutdown();
+        report(results, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Plays one game from the opening; engine A plays black if aBlack. The seed picks varied moves. */
+    GameResult play(int size, int[] openingMoves, boolean aBlack, long seed) {
+        Position board = Position.create(size);
+        for (int i = 0; i < openingMoves.length; i++) {
+            int mv = openingMoves[i];
+            board.addStone(mv % size, mv / size, i % 2 == 1);
+        }
+        // index 0 = A, 1 = B
+        Engine[] ai = {engines[0].create(board, !aBlack, ttMegabytes), engines[1].create(board, aBlack, ttMegabytes)};
+        try {
+            for (Engine e : ai) e.setThreads(threads);
+            GameResult result = new GameResult();
+            result.score = 0.5;
+            boolean whiteToMove = openingMoves.length % 2 == 1;
+            // both games of an opening vary the same way
+            Random rnd = new Random(seed);
+            for (int ply = 0; board.getStoneCount() < size * size; ply++) {
+                int side = whiteToMove == aBlack ? 1 : 0;
+                EngineSpec spec = engines[side];
+                long t = System.nanoTime();
+                int[] mv = ply < vary && ai[side] instanceof Minimax
+                        ? variedMove((Minimax) ai[side], spec, whiteToMove, rnd)
+                        : ai[side].calculateNextMove(spec.depth, spec.millis);
+                long elapsed = System.nanoTime() - t;
+                result.nanos[side] += elapsed;
+                result.nodes[side] += ai[side].getNodeCount();
+                result.latencies.get(side).add(elapsed);
+                if (mv == null || !board.addStone(mv[1], mv[0], whiteToMove)) {
+                    // a broken engine loses instead of passing for a draw
+                    result.forfeit = side;
+                    result.score = side == 0 ? 0 : 1;
+                    break;
+                }
+                if (board.checkWinLast()) {
+                    result.score = side == 0 ? 1 : 0;
+                    break;
+                }
+                whiteToMove = !whiteToMove;
+            }
+            return result;
+        } finally {
+            // helper threads of multi-threaded engines end with the game
+            for (Engine e : ai) e.close();
+        }
+    }
+
+    // A random move among the multi-PV lines close to the best one
+    private static int[] variedMove(Minimax engine, EngineSpec spec, boolean whiteToMove, Random rnd) {
+        List<PrincipalVariation> lines = engine.analyze(spec.depth, spec.millis, VARY_LINES, whiteToMove,
+                new CancellationToken());
+        if (lines.isEmpty()) return null;
+        int close = 1;
+        while (close < lines.size() && lines.get(close).getScore() >= lines.get(0).getScore() - VARY_MARGIN) close++;
+        return lines.get(rnd.nextInt(close)).getMove();
+    }
+
+    /**
+     * The centre stone and random stones next to earlier ones, as packed cells, black first; no
+     * stones at all when stones is 0.
+     */
+    static int[] randomOpening(int size, int stones, long seed) {
+        if (stones < 0) throw new IllegalArgumentException("opening must not be negative");
+        if (stones == 0) return new int[0];
+        Random rnd = new Random(seed);
+        Position b = Position.create(size);
+        int[] cells = new int[size * size];
+        int[] moves = new int[stones];
+        moves[0] = size / 2 * size + size / 2;
+        b.addStone(size / 2, size / 2, false);
+        for (int i = 1; i < moves.length; ) {
+            int mv = cells[rnd.nextInt(b.fillCandidates(cells))];
+            b.addStone(mv % size, mv / size, i % 2 == 1);
+            // an opening must not already be won
+            if (b.checkWinLast()) b.removeStoneNoGUI(mv % size, mv / size);
+            else moves[i++] = mv;
+        }
+        return moves;
+    }
+
+    private void report(List<GameResult> results, double seconds) {
+        int wins = 0, draws = 0, losses = 0;
+        int[] forfeits = new int[2];
+        double sum = 0, sumSq = 0;
+        long[] nodes = new long[2], nanos = new long[2];
+        List<List<Long>> latencies = List.of(new ArrayList<>(), new ArrayList<>());
+        for (GameResult r : results) {
+            if (r.score == 1) wins++; else if (r.score == 0) losses++; else draws++;
+            if (r.forfeit >= 0) forfeits[r.forfeit]++;
+            sum += r.score;
+            sumSq += r.score * r.score;
+            for (int i = 0; i < 2; i++) {
+                nodes[i] += r.nodes[i];
+                nanos[i] += r.nanos[i];
+                latencies.get(i).addAll(r.latencies.get(i));
+            }
+        }
+        int n = results.size();
+        double mean = sum / n;
+        double se = Math.sqrt(Math.max(0, sumSq / n - mean * mean) / n);
+        System.out.printf("%d games in %.1f s: A +%d =%d -%d, score %.1f%%%n",
+                n, seconds, wins, draws, losses, 100 * mean);
+        System.out.printf("Elo A - B: %s, 95%% CI [%s, %s]%n",
+                elo(mean), elo(mean - 1.96 * se), elo(mean + 1.96 * se));
+        // counted as losses above, but they point at a bug rather than a weaker engine
+        if (forfeits[0] + forfeits[1] > 0)
+            System.out.printf("Forfeits (no move or an illegal one): A %d, B %d%n", forfeits[0], forfeits[1]);
+        String[] names = {"A", "B"};
+        for (int i = 0; i < 2; i++) {
+            long[] lat = latencies.get(i).stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%s: %.1f knps, %d moves, latency ms p50 %.1f p95 %.1f p99 %.1f%n",
+                    names[i], nanos[i] == 0 ? 0 : nodes[i] / (nanos[i] / 1e6), lat.length,
+                    percentile(lat, 50), percentile(lat, 95), percentile(lat, 99));
+        }
+    }
+
+    static String elo(double score) {
+        if (score <= 0) return "-inf";
+        if (score >= 1) return "+inf";
+        return String.format("%+.0f", -400 * Math.log10(1 / score - 1));
+    }
+
+    static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,313 @@
+package go;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Headless analysis of game archives (see GameRecordReader for the formats). Games are read one
+ * at a time and analysed on a work-stealing pool; long games are split into runs of positions
+ * that replay the game up to their first position, so idle threads steal work from them. At
+ * most a few games per thread are in flight, so memory stays bounded for any archive size.
+ *
+ * Every position is searched once by Minimax. The search of the position after a move gives
+ * the score of that move, which is compared with the best score of the position before it:
+ *   agreement    the played move is the move the search chose
+ *   missed win   the mover had a forced win and the played move lets it go
+ *   losing move  the mover was not lost and the played move allows a forced win
+ * Only changes of forced results by moves other than the search's own count as blunders;
+ * evaluations differ too much between odd and even depths to compare them across two searches.
+ *
+ * Usage: java go.BatchAnalyzer in=PATH [key=value ...]
+ *   in=PATH          record file, or a directory searched for record files
+ *   depth=4          search depth
+ *   from=0           first ply analysed, to skip openings
+ *   tt=4             transposition table megabytes per engine; each pool thread keeps one
+ *                    engine per colour for the whole run
+ *   threats=true     run the threat solver before each search; false saves its time limit
+ *                    per position when only the alpha-beta result is wanted
+ *   threads=N        pool parallelism (default: number of cores)
+ *   positions=FILE   also write one CSV line per analysed move
+ */
+public class BatchAnalyzer {
+    // positions per leaf task; longer runs are split in two
+    private static final int RUN = 16;
+
+    private final int depth, from, ttMegabytes;
+    private final boolean threats;
+    private final PrintWriter positions;
+    // engines of each pool thread, black and white, re-pointed at the replay board of every run
+    private final ThreadLocal<Minimax[]> engines = new ThreadLocal<>();
+
+    private final AtomicLong games = new AtomicLong(), skipped = new AtomicLong();
+    private final AtomicLong moves = new AtomicLong(), agreements = new AtomicLong();
+    private final AtomicLong missedWins = new AtomicLong(), losingMoves = new AtomicLong();
+    private final AtomicLong searched = new AtomicLong(), nodes = new AtomicLong(), nanos = new AtomicLong();
+    private final Histogram nodeCounts = new Histogram(), micros = new Histogram();
+    // bounds the games read ahead of the pool, see run
+    private Semaphore inFlight;
+
+    BatchAnalyzer(int depth, int from, int ttMegabytes, boolean threats, PrintWriter positions) {
+        this.depth = depth;
+        this.from = from;
+        this.ttMegabytes = ttMegabytes;
+        this.threats = threats;
+        this.positions = positions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int depth = 4, from = 0, tt = 4, threads = Runtime.getRuntime().availableProcessors();
+        boolean threats = true;
+        Path in = null, csv = null;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "in": in = Paths.get(value); break;
+                case "depth": depth = Integer.parseInt(value); break;
+                case "from": from = Integer.parseInt(value); break;
+                case "tt": tt = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "threats": threats = Boolean.parseBoolean(value); break;
+                case "positions": csv = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        if (in == null) throw new IllegalArgumentException("Missing in=PATH");
+        try (PrintWriter out = csv == null ? null : new PrintWriter(new BufferedWriter(
+                Files.newBufferedWriter(csv, StandardCharsets.UTF_8)))) {
+            if (out != null) out.println("source,ply,played,best,agree,score,played_score,blunder,depth,nodes,micros");
+            BatchAnalyzer analyzer = new BatchAnalyzer(depth, from, tt, threats, out);
+            long start = System.nanoTime();
+            analyzer.run(in, threads);
+            analyzer.report((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /** Reads and analyses every record under the path, returning when all are done. */
+    void run(Path in, int threads) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        inFlight = new Semaphore(4 * threads);
+        try (GameRecordReader reader = new GameRecordReader(in)) {
+            while (true) {
+                GameRecordReader.GameRecord record;
+                try {
+                    record = reader.next();
+                } catch (IllegalArgumentException e) {
+                    skipped.incrementAndGet();
+                    System.err.println("Skipped " + e.getMessage());
+                    continue;
+                }
+                if (record == null) break;
+                inFlight.acquire();
+                pool.execute(new GameTask(record));
+                long g = games.incrementAndGet();
+                if (g % 1000 == 0) System.err.printf("  %d games, %d positions%n", g, searched.get());
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    /** Analyses one game: searches all its positions in parallel runs, then compares the moves. */
+    private final class GameTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final transient GameRecordReader.GameRecord game;
+        // per position (after i moves): best move packed, score for the side to move, depth, nodes, nanos
+        final int[] best, score, depths;
+        final long[] nodeCount, elapsed;
+        // the last move made five; the position after the last move is only searched when the
+        // game did not end there
+        final boolean won;
+        final int last;
+
+        GameTask(GameRecordReader.GameRecord game) {
+            this.game = game;
+            int n = game.moves.length + 1;
+            best = new int[n];
+            score = new int[n];
+            depths = new int[n];
+            nodeCount = new long[n];
+            elapsed = new long[n];
+            won = lastMoveWins(game);
+            int len = game.moves.length;
+            last = won || len == game.size * game.size ? len - 1 : len;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (from <= last) new Run(this, from, last + 1).invoke();
+                summarise(this);
+            } catch (RuntimeException e) {
+                skipped.incrementAndGet();
+                System.err.println("Failed " + game.source + ": " + e);
+            } finally {
+                inFlight.release();
+            }
+        }
+    }
+
+    /** Positions [lo, hi) of a game, searched on one replay board or split in two. */
+    private final class Run extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final transient GameTask game;
+        final int lo, hi;
+
+        Run(GameTask game, int lo, int hi) {
+            this.game = game;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > RUN) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Run(game, lo, mid), new Run(game, mid, hi));
+                return;
+            }
+            GameRecordReader.GameRecord g = game.game;
+            int n = g.size;
+            Board b = new Board(n);
+            for (int i = 0; i < lo; i++) b.addStoneNoGUI(g.moves[i] % n, g.moves[i] / n, i % 2 == 0);
+            Minimax[] engines = engines(b);
+            for (int i = lo; i < hi; i++) {
+                SearchResult r = engines[i % 2].calculate(depth, 0, new CancellationToken());
+                int[] mv = r.getMove();
+                game.best[i] = mv == null ? -1 : mv[0] * n + mv[1];
+                game.score[i] = r.getScore();
+                game.depths[i] = r.getStats().getDepth();
+                game.nodeCount[i] = r.getStats().getNodes();
+                game.elapsed[i] = r.getStats().getElapsedNanos();
+                if (i < g.moves.length) b.addStoneNoGUI(g.moves[i] % n, g.moves[i] / n, i % 2 == 0);
+            }
+        }
+    }
+
+    // The calling thread's engines, one per colour, sharing the replay board
+    private Minimax[] engines(Board b) {
+        Minimax[] e = engines.get();
+        if (e == null) {
+            e = new Minimax[]{new Minimax(b, false, 0, ttMegabytes), new Minimax(b, true, 0, ttMegabytes)};
+            for (Minimax m : e) m.setThreatSearch(threats);
+            engines.set(e);
+        } else {
+            for (Minimax m : e) m.setBoard(b);
+        }
+        return e;
+    }
+
+    private static boolean lastMoveWins(GameRecordReader.GameRecord g) {
+        int n = g.size, len = g.moves.length;
+        if (len == 0) return false;
+        Board b = new Board(n);
+        for (int i = 0; i < len; i++) b.addStoneNoGUI(g.moves[i] % n, g.moves[i] / n, i % 2 == 0);
+        int mv = g.moves[len - 1];
+        return b.hasFiveThrough(mv % n, mv / n, (len - 1) % 2 == 1);
+    }
+
+    private void summarise(GameTask t) {
+        GameRecordReader.GameRecord g = t.game;
+        int n = g.size, len = g.moves.length;
+        for (int i = from; i <= t.last; i++) {
+            searched.incrementAndGet();
+            nodes.addAndGet(t.nodeCount[i]);
+            nanos.addAndGet(t.elapsed[i]);
+            nodeCounts.add(t.nodeCount[i]);
+            micros.add(t.elapsed[i] / 1000);
+        }
+        StringBuilder csv = positions == null ? null : new StringBuilder();
+        for (int i = from; i < len && i <= t.last; i++) {
+            int played = g.moves[i];
+            // the mover's score after the move: a win if it ended the game, a draw if it filled the board
+            int playedScore = i + 1 <= t.last ? -t.score[i + 1] : t.won ? Minimax.MATE - 1 : 0;
+            int best = t.score[i];
+            boolean agree = played == t.best[i];
+            String blunder = "";
+            // the search's own move is never a blunder, even when the next search sees further
+            if (agree) blunder = "";
+            else if (best >= Minimax.MATE_BOUND && playedScore < Minimax.MATE_BOUND) blunder = "missed win";
+            else if (best > -Minimax.MATE_BOUND && playedScore <= -Minimax.MATE_BOUND) blunder = "losing move";
+            moves.incrementAndGet();
+            if (agree) agreements.incrementAndGet();
+            if (blunder.equals("missed win")) missedWins.incrementAndGet();
+            else if (!blunder.isEmpty()) losingMoves.incrementAndGet();
+            if (csv != null) {
+                csv.append('"').append(g.source).append("\",").append(i + 1).append(',')
+                   .append(GameRecordReader.formatMove(played, n)).append(',')
+                   .append(t.best[i] < 0 ? "" : GameRecordReader.formatMove(t.best[i], n)).append(',')
+                   .append(agree).append(',').append(best).append(',').append(playedScore).append(',')
+                   .append(blunder).append(',').append(t.depths[i]).append(',').append(t.nodeCount[i]).append(',')
+                   .append(t.elapsed[i] / 1000).append('\n');
+            }
+        }
+        if (csv != null && csv.length() > 0) {
+            // one game at a time, so the lines of a game stay together
+            synchronized (positions) {
+                positions.print(csv);
+            }
+        }
+    }
+
+    private void report(double seconds) {
+        long m = moves.get(), s = searched.get();
+        System.out.printf("%d games (%d skipped), %d positions searched at depth %d in %.1f s, %.0f positions/s%n",
+                games.get(), skipped.get(), s, depth, seconds, s / Math.max(seconds, 1e-9));
+        System.out.printf("Best-move agreement: %.1f%% of %d moves%n", m == 0 ? 0 : 100.0 * agreements.get() / m, m);
+        System.out.printf("Blunders: %d missed wins, %d losing moves%n", missedWins.get(), losingMoves.get());
+        System.out.printf("Search cost per position: %.0f nodes, %.2f ms on average%n",
+                s == 0 ? 0 : (double) nodes.get() / s, s == 0 ? 0 : nanos.get() / 1e6 / s);
+        System.out.printf("  nodes p50 %d p95 %d p99 %d, ms p50 %.1f p95 %.1f p99 %.1f%n",
+                nodeCounts.percentile(50), nodeCounts.percentile(95), nodeCounts.percentile(99),
+                micros.percentile(50) / 1e3, micros.percentile(95) / 1e3, micros.percentile(99) / 1e3);
+    }
+
+    /**
+     * Percentiles in constant memory: values are counted in buckets of powers of two, split
+     * in four, so a percentile is exact to within a fifth of its value.
+     */
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * 4);
+        private final AtomicLong count = new AtomicLong();
+
+        void add(long value) {
+            buckets.incrementAndGet(bucket(Math.max(0, value)));
+            count.incrementAndGet();
+        }
+
+        private static int bucket(long v) {
+            if (v < 4) return (int) v;
+            int log = 63 - Long.numberOfLeadingZeros(v);
+            return log * 4 + (int) ((v >>> (log - 2)) & 3);
+        }
+
+        // Upper end of a bucket
+        private static long upper(int bucket) {
+            if (bucket < 4) return bucket;
+            int log = bucket / 4;
+            return ((4L + (bucket & 3) + 1) << (log - 2)) - 1;
+        }
+
+        long percentile(int p) {
+            long total = count.get(), rank = (long) Math.ceil(p / 100.0 * total), seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) return upper(i);
+            }
+            return 0;
+        }
+    }
+}
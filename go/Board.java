@@ -0,0 +1,356 @@
+package go;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages board state and win logic.
+ *
+ * Stones are stored twice: in the int matrix read by the UI (0 empty, 1 white, 2 black)
+ * and in per-colour line bitboards used by the engine. Every row, column, diagonal and
+ * anti-diagonal is packed into a single long, so boards of up to 64 x 64 are supported.
+ * Row, diagonal and anti-diagonal lines index cells by column; column lines index by row.
+ */
+class Board implements Position {
+    static final int WHITE = 1, BLACK = 2;
+
+    // Zobrist keys per colour and cell (index row * 64 + col), shared by all board sizes
+    private static final long[][] ZOBRIST = new long[2][64 * 64];
+    static {
+        java.util.SplittableRandom rnd = new java.util.SplittableRandom(0x5EED_60_60L);
+        for (long[] keys : ZOBRIST)
+            for (int i = 0; i < keys.length; i++) keys[i] = rnd.nextLong();
+    }
+
+    private int size;
+    private int[][] matrix;
+
+    // [colour][line], colour 0 = white, 1 = black
+    private final long[][] rows, cols, diags, antis;
+    // valid cells of every diagonal (index row - col + size - 1) and anti-diagonal (row + col)
+    private final long[] diagMask, antiMask;
+    private final long fullMask;
+    // Zobrist key of the stones on the board, updated on every add and remove
+    private long hash;
+    // keys of the 8 symmetric images (see Position), [0] == hash
+    private final long[] symmetricHashes = new long[8];
+
+    // Cached PatternTable score of every line, per colour and turn flag:
+    // [colour * 2 + (currentTurn ? 1 : 0)][line], lines numbered rows, columns, diagonals, anti-diagonals.
+    // Only the four lines through a changed cell are rescored.
+    private final int[][] lineScores;
+    private final int[] scoreTotals;
+    private PatternTable patterns = PatternTable.DEFAULT;
+
+    // Candidate moves: empty cells within `radius` (Chebyshev distance) of a stone. nearStones counts
+    // the stones around each cell; candidates is a dense list of packed cells (row * size + col)
+    // with candidateSlot giving each cell's position in it, or -1.
+    private int radius = 1;
+    private final int[] nearStones;
+    private final int[] candidates;
+    private final int[] candidateSlot;
+    private int candidateCount;
+    private int stoneCount;
+
+    // initialize to “no move yet”
+    private int lastX = -1, lastY = -1;
+
+    public Board(int size) {
+        if (size < 5 || size > 64) throw new IllegalArgumentException("Unsupported board size " + size);
+        this.size = size;
+        matrix = new int[size][size];
+        rows = new long[2][size];
+        cols = new long[2][size];
+        diags = new long[2][2 * size - 1];
+        antis = new long[2][2 * size - 1];
+        fullMask = size == 64 ? -1L : (1L << size) - 1;
+        diagMask = new long[2 * size - 1];
+        antiMask = new long[2 * size - 1];
+        for (int r = 0; r < size; r++) for (int c = 0; c < size; c++) {
+            diagMask[r - c + size - 1] |= 1L << c;
+            antiMask[r + c] |= 1L << c;
+        }
+        lineScores = new int[4][6 * size - 2];
+        scoreTotals = new int[4];
+        nearStones = new int[size * size];
+        candidates = new int[size * size];
+        candidateSlot = new int[size * size];
+        java.util.Arrays.fill(candidateSlot, -1);
+    }
+
+    public Board(Board other) {
+        this.size = other.size;
+        this.matrix = new int[size][size];
+        for (int i = 0; i < size; i++)
+            System.arraycopy(other.matrix[i], 0, this.matrix[i], 0, size);
+        this.rows = copy(other.rows);
+        this.cols = copy(other.cols);
+        this.diags = copy(other.diags);
+        this.antis = copy(other.antis);
+        // masks only depend on the size, share them
+        this.diagMask = other.diagMask;
+        this.antiMask = other.antiMask;
+        this.fullMask = other.fullMask;
+        this.hash = other.hash;
+        System.arraycopy(other.symmetricHashes, 0, this.symmetricHashes, 0, 8);
+        this.lineScores = new int[4][];
+        for (int i = 0; i < 4; i++) this.lineScores[i] = other.lineScores[i].clone();
+        this.scoreTotals = other.scoreTotals.clone();
+        this.patterns = other.patterns;
+        this.radius = other.radius;
+        this.nearStones = other.nearStones.clone();
+        this.candidates = other.candidates.clone();
+        this.candidateSlot = other.candidateSlot.clone();
+        this.candidateCount = other.candidateCount;
+        this.stoneCount = other.stoneCount;
+        // copy lastX/lastY as well
+        this.lastX = other.lastX;
+        this.lastY = other.lastY;
+    }
+
+    private static long[][] copy(long[][] src) {
+        return new long[][]{ src[0].clone(), src[1].clone() };
+    }
+
+    public Board copy() { return new Board(this); }
+    public int getSize() { return size; }
+    /** Zobrist key of the current stones; the side to move is not included. */
+    public long getHash() { return hash; }
+
+    @Override
+    public long getCanonicalHash() {
+        return symmetricHashes[getCanonicalTransform()];
+    }
+
+    @Override
+    public long getSymmetricHash(int transform) { return symmetricHashes[transform]; }
+
+    @Override
+    public int getCanonicalTransform() {
+        int best = 0;
+        for (int t = 1; t < 8; t++) if (symmetricHashes[t] < symmetricHashes[best]) best = t;
+        return best;
+    }
+    public int[][] getBoardMatrix() { return matrix; }
+    public int stoneAt(int x, int y) { return matrix[y][x]; }
+    public int getStoneCount() { return stoneCount; }
+
+    public boolean addStone(int x, int y, boolean white) {
+        if (x < 0 || y < 0 || x >= size || y >= size || matrix[y][x] != 0) return false;
+        matrix[y][x] = white ? WHITE : BLACK;
+        toggle(x, y, white ? 0 : 1);
+        stoneCount++;
+        dropCandidate(y * size + x);
+        countNeighbours(x, y, 1);
+        lastX = x;
+        lastY = y;
+        return true;
+    }
+
+    // flips the bit of (x, y) in every rotated copy of the given colour
+    private void toggle(int x, int y, int colour) {
+        rows[colour][y] ^= 1L << x;
+        cols[colour][x] ^= 1L << y;
+        diags[colour][y - x + size - 1] ^= 1L << x;
+        antis[colour][y + x] ^= 1L << x;
+        hash ^= ZOBRIST[colour][y * 64 + x];
+        long[] keys = ZOBRIST[colour];
+        int m = size - 1;
+        symmetricHashes[0] = hash;
+        symmetricHashes[1] ^= keys[y * 64 + m - x];
+        symmetricHashes[2] ^= keys[(m - y) * 64 + x];
+        symmetricHashes[3] ^= keys[(m - y) * 64 + m - x];
+        symmetricHashes[4] ^= keys[x * 64 + y];
+        symmetricHashes[5] ^= keys[x * 64 + m - y];
+        symmetricHashes[6] ^= keys[(m - x) * 64 + y];
+        symmetricHashes[7] ^= keys[(m - x) * 64 + m - y];
+        int d = y - x + size - 1, a = y + x;
+        rescoreLine(y, rows[0][y], rows[1][y], fullMask);
+        rescoreLine(size + x, cols[0][x], cols[1][x], fullMask);
+        rescoreLine(2 * size + d, diags[0][d], diags[1][d], diagMask[d]);
+        rescoreLine(4 * size - 1 + a, antis[0][a], antis[1][a], antiMask[a]);
+    }
+
+    private void rescoreLine(int line, long white, long black, long valid) {
+        for (int i = 0; i < 4; i++) {
+            boolean forWhite = i < 2;
+            int score = patterns.score(forWhite ? white : black, forWhite ? black : white, valid, (i & 1) != 0);
+            scoreTotals[i] += score - lineScores[i][line];
+            lineScores[i][line] = score;
+        }
+    }
+
+    /** Switches the line evaluator (PatternTable.DEFAULT or SPLIT) and rescores every line. */
+    void setPatternTable(PatternTable table) {
+        patterns = table;
+        for (int i = 0; i < size; i++) {
+            rescoreLine(i, rows[0][i], rows[1][i], fullMask);
+            rescoreLine(size + i, cols[0][i], cols[1][i], fullMask);
+        }
+        for (int i = 0; i < 2 * size - 1; i++) {
+            rescoreLine(2 * size + i, diags[0][i], diags[1][i], diagMask[i]);
+            rescoreLine(4 * size - 1 + i, antis[0][i], antis[1][i], antiMask[i]);
+        }
+    }
+
+    PatternTable getPatternTable() { return patterns; }
+
+    /**
+     * Sum of the consecutive-set scores over all lines for one colour, kept up to date on
+     * every add and remove. Equal to a full scan with Minimax.getScore semantics.
+     */
+    public int lineScore(boolean forBlack, boolean currentTurn) {
+        return scoreTotals[(forBlack ? 2 : 0) + (currentTurn ? 1 : 0)];
+    }
+
+    public boolean checkWinLast() {
+        if (lastX < 0 || lastY < 0) return false;
+        int t = matrix[lastY][lastX];
+        return t != 0 && hasFiveThrough(lastX, lastY, t == WHITE);
+    }
+
+    public boolean checkWin(int x, int y, boolean white) {
+        return hasFiveThrough(x, y, white);
+    }
+
+    /** Five-in-a-row check for runs that contain (x, y); a five elsewhere on its lines does not count. */
+    public boolean hasFiveThrough(int x, int y, boolean white) {
+        int c = white ? 0 : 1;
+        return Check.hasFiveThrough(rows[c][y], x) || Check.hasFiveThrough(cols[c][x], y)
+            || Check.hasFiveThrough(diags[c][y - x + size - 1], x) || Check.hasFiveThrough(antis[c][y + x], x);
+    }
+
+    /** Five-in-a-row check over every line of the board. */
+    public boolean hasFive(boolean white) {
+        int c = white ? 0 : 1;
+        for (int i = 0; i < size; i++)
+            if (Check.hasFive(rows[c][i]) || Check.hasFive(cols[c][i])) return true;
+        for (int i = 0; i < 2 * size - 1; i++)
+            if (Check.hasFive(diags[c][i]) || Check.hasFive(antis[c][i])) return true;
+        return false;
+    }
+
+    /**
+     * Candidate moves as {row, col}, in the order of the incremental candidate set.
+     * Falls back to the centre on an empty board.
+     */
+    public List<int[]> generateMoves() {
+        List<int[]> moves = new ArrayList<>(Math.max(1, candidateCount));
+        for (int i = 0; i < candidateCount; i++)
+            moves.add(new int[]{candidates[i] / size, candidates[i] % size});
+        if (moves.isEmpty()) moves.add(new int[]{size/2, size/2});
+        return moves;
+    }
+
+    /**
+     * Copies the candidate moves, packed as row * size + col, into out and returns how many
+     * were written. out must hold size * size entries. On an empty board the centre is returned.
+     */
+    public int fillCandidates(int[] out) {
+        if (candidateCount == 0) {
+            // no candidates on a full board either
+            if (stoneCount > 0) return 0;
+            out[0] = (size / 2) * size + size / 2;
+            return 1;
+        }
+        System.arraycopy(candidates, 0, out, 0, candidateCount);
+        return candidateCount;
+    }
+
+    public int getCandidateRadius() { return radius; }
+    public int getCandidateCount() { return candidateCount; }
+
+    /** Sets the neighbourhood radius (1 or 2) of the candidate set and rebuilds it. */
+    public void setCandidateRadius(int r) {
+        if (r < 1 || r > 2) throw new IllegalArgumentException("Candidate radius must be 1 or 2");
+        if (r == radius) return;
+        radius = r;
+        java.util.Arrays.fill(nearStones, 0);
+        for (int i = 0; i < candidateCount; i++) candidateSlot[candidates[i]] = -1;
+        candidateCount = 0;
+        for (int y = 0; y < size; y++) for (int x = 0; x < size; x++)
+            if (matrix[y][x] != 0) countNeighbours(x, y, 1);
+    }
+
+    // Adjusts the stone counts around (x, y) and keeps the candidate list in step
+    private void countNeighbours(int x, int y, int delta) {
+        int y0 = Math.max(0, y - radius), y1 = Math.min(size - 1, y + radius);
+        int x0 = Math.max(0, x - radius), x1 = Math.min(size - 1, x + radius);
+        for (int ny = y0; ny <= y1; ny++) for (int nx = x0; nx <= x1; nx++) {
+            if (nx == x && ny == y) continue;
+            int cell = ny * size + nx;
+            int count = nearStones[cell] += delta;
+            if (matrix[ny][nx] != 0) continue;
+            if (delta > 0 && count == 1) pushCandidate(cell);
+            else if (delta < 0 && count == 0) dropCandidate(cell);
+        }
+    }
+
+    private void pushCandidate(int cell) {
+        if (candidateSlot[cell] >= 0) return;
+        candidateSlot[cell] = candidateCount;
+        candidates[candidateCount++] = cell;
+    }
+
+    private void dropCandidate(int cell) {
+        int slot = candidateSlot[cell];
+        if (slot < 0) return;
+        int last = candidates[--candidateCount];
+        candidates[slot] = last;
+        candidateSlot[last] = slot;
+        candidateSlot[cell] = -1;
+    }
+
+    /**
+     * Local pattern score of a candidate cell for move ordering: the consecutive-set score of
+     * the run the mover would form through the cell on each of its four lines (attack), plus
+     * the score of the run the opponent would form there (defence). Only the four lines
+     * through the cell are looked at.
+     */
+    public int localScore(int x, int y, boolean white) {
+        int me = white ? 0 : 1, op = 1 - me;
+        int d = y - x + size - 1, a = y + x;
+        return runScore(rows[me][y], rows[op][y], fullMask, x)
+             + runScore(cols[me][x], cols[op][x], fullMask, y)
+             + runScore(diags[me][d], diags[op][d], diagMask[d], x)
+             + runScore(antis[me][a], antis[op][a], antiMask[a], x)
+             + runScore(rows[op][y], rows[me][y], fullMask, x)
+             + runScore(cols[op][x], cols[me][x], fullMask, y)
+             + runScore(diags[op][d], diags[me][d], diagMask[d], x)
+             + runScore(antis[op][a], antis[me][a], antiMask[a], x);
+    }
+
+    // Score of the run of `own` through bit p once a stone is placed at p
+    private static int runScore(long own, long opp, long valid, int p) {
+        long line = own | 1L << p;
+        long empty = valid & ~(line | opp);
+        int up = Long.numberOfTrailingZeros(~(line >>> p));
+        int down = Long.numberOfLeadingZeros(~(line << (63 - p)));
+        int start = p - down + 1, end = p + up;
+        int blocks = 2;
+        if (start > 0 && (empty >>> (start - 1) & 1) != 0) blocks--;
+        if (end < 64 && (empty >>> end & 1) != 0) blocks--;
+        return Minimax.getConsecutiveSetScore(up + down - 1, blocks, true);
+    }
+
+    // Line accessors for the evaluator. Lines are indexed as described in the class comment.
+    int lineCount() { return 2 * size - 1; }
+    long rowBits(boolean white, int r) { return rows[white ? 0 : 1][r]; }
+    long colBits(boolean white, int c) { return cols[white ? 0 : 1][c]; }
+    long diagBits(boolean white, int d) { return diags[white ? 0 : 1][d]; }
+    long antiBits(boolean white, int a) { return antis[white ? 0 : 1][a]; }
+    long fullMask() { return fullMask; }
+    long diagMask(int d) { return diagMask[d]; }
+    long antiMask(int a) { return antiMask[a]; }
+
+    public void addStoneNoGUI(int x, int y, boolean black) { addStone(x, y, !black); }
+    public void removeStoneNoGUI(int x, int y) {
+        int t = matrix[y][x];
+        if (t == 0) return;
+        toggle(x, y, t == WHITE ? 0 : 1);
+        matrix[y][x] = 0;
+        stoneCount--;
+        countNeighbours(x, y, -1);
+        if (nearStones[y * size + x] > 0) pushCandidate(y * size + x);
+    }
+}
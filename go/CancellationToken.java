@@ -0,0 +1,12 @@
+package go;
+
+/**
+ * Cooperative cancellation for a running search. The searching threads poll it every few
+ * thousand nodes, so a cancelled search unwinds within milliseconds.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() { cancelled = true; }
+    public boolean isCancelled() { return cancelled; }
+}
@@ -0,0 +1,52 @@
+package go;
+
+/**
+ * Utility: win detection & move generation
+ */
+class Check {
+    public static boolean win(int[][] m, int x, int y, int t) {
+        int[][] dirs = {{1,0},{0,1},{1,1},{1,-1}};
+        for (int[] d : dirs) {
+            int cnt = 1 + count(m, x, y, d[0], d[1], t)
+                       + count(m, x, y, -d[0], -d[1], t);
+            if (cnt >= 5) return true;
+        }
+        return false;
+    }
+    private static int count(int[][] m, int x, int y, int dx, int dy, int t) {
+        int c = 0;
+        for (int i = 1; i < 5; i++) {
+            int nx = x + dx*i, ny = y + dy*i;
+            if (nx<0||ny<0||nx>=m.length||ny>=m.length||m[ny][nx]!=t) break;
+            c++;
+        }
+        return c;
+    }
+    public static java.util.ArrayList<int[]> generateMoves(int[][] m) {
+        java.util.ArrayList<int[]> moves = new java.util.ArrayList<>();
+        int n = m.length;
+        boolean[][] seen = new boolean[n][n];
+        for (int r = 0; r < n; r++) for (int c = 0; c < n; c++) if (m[r][c] != 0) {
+            for (int dr = -1; dr <= 1; dr++) for (int dc = -1; dc <= 1; dc++) {
+                int nr = r+dr, nc = c+dc;
+                if (nr>=0&&nc>=0&&nr<n&&nc<n&&m[nr][nc]==0&&!seen[nr][nc]){
+                    seen[nr][nc]=true; moves.add(new int[]{nr,nc});
+                }
+            }
+        }
+        if (moves.isEmpty()) moves.add(new int[]{n/2,n/2});
+        return moves;
+    }
+
+    /** True if the bits of a single line contain five consecutive stones. */
+    static boolean hasFive(long line) {
+        return (line & line >>> 1 & line >>> 2 & line >>> 3 & line >>> 4) != 0;
+    }
+
+    /** True if five consecutive stones of a single line include bit p. */
+    static boolean hasFiveThrough(long line, int p) {
+        long starts = line & line >>> 1 & line >>> 2 & line >>> 3 & line >>> 4;
+        // a five covers p when it starts at one of p - 4 .. p
+        return (p >= 4 ? starts >>> (p - 4) & 0x1F : starts & (2L << p) - 1) != 0;
+    }
+}
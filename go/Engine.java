@@ -0,0 +1,59 @@
+package go;
+
+/**
+ * A move-choosing engine for one side of a game. Minimax searches alpha-beta trees, MonteCarlo
+ * grows a tree from random playouts; both read the board they were created with and never
+ * modify it.
+ */
+public interface Engine extends AutoCloseable {
+    /**
+     * Chooses the next move, abortable from another thread.
+     *
+     * @param plyDepth          search depth of depth-bounded engines; engines without a depth
+     *                          scale their effort with it when there is no time budget
+     * @param timeBudgetMillis  budget for the whole move, 0 for no limit
+     * @return {row, col}, or null once the token is cancelled
+     */
+    int[] calculateNextMove(int plyDepth, long timeBudgetMillis, CancellationToken token);
+
+    default int[] calculateNextMove(int plyDepth, long timeBudgetMillis) {
+        return calculateNextMove(plyDepth, timeBudgetMillis, new CancellationToken());
+    }
+
+    /** Number of search threads; 1 searches on the calling thread only. */
+    void setThreads(int threads);
+
+    int getThreads();
+
+    /** Work done by the last calculateNextMove: search nodes or playouts. */
+    long getNodeCount();
+
+    /** Receives live progress of calculateNextMove, on the thread running the search. */
+    void setProgressListener(ProgressListener listener);
+
+    /**
+     * Starts thinking on the opponent's time after the engine's move has been played.
+     * @return the predicted reply as {row, col}, or null if the engine does not ponder
+     */
+    default int[] startPondering(int plyDepth) { return null; }
+
+    /** Stops a running ponder search, if any. */
+    default void stopPondering() {}
+
+    /**
+     * Stops pondering and lets the engine's own threads end; a search still unwinding after its
+     * token was cancelled finishes first. The engine is not used afterwards.
+     */
+    @Override
+    void close();
+
+    interface ProgressListener {
+        /**
+         * @param depth           iteration being searched, or the depth of the tree
+         * @param bestMove        {row, col} of the best move so far, or null
+         * @param nodes           nodes or playouts so far, all threads together
+         * @param nodesPerSecond  search speed since the start of the move
+         */
+        void progress(int depth, int[] bestMove, long nodes, long nodesPerSecond);
+    }
+}
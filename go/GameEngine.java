@@ -0,0 +1,286 @@
+package go;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UI-independent game service: many concurrent games, each with its own board and engine.
+ * A human plays one colour through play(), the engine the other through requestAiMove().
+ *
+ * AI searches run on a fixed pool of search threads with a bounded queue. When the queue is
+ * full requestAiMove throws BusyException instead of queueing more work, so callers can back
+ * off. Games are independent: every game owns its Board and Minimax (with a small
+ * transposition table, which is most of the memory a game costs) and is locked on its own;
+ * games idle for longer than the idle timeout are dropped when new games are created.
+ */
+public class GameEngine {
+    private static final int MAX_DEPTH = 20;
+    /** Longest search budget requestAiMove accepts. */
+    public static final long MAX_BUDGET_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_GAMES = 1000;
+    // heap of a game besides its transposition table: board, engine and search stacks (about 16 KB measured)
+    private static final long GAME_OVERHEAD_BYTES = 32 * 1024;
+
+    /** The search pool and queue are full, or the game limit is reached; retry later. */
+    public static class BusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BusyException(String message) { super(message); }
+    }
+
+    /** Snapshot of one game. */
+    public static final class GameState {
+        public final String id;
+        public final int size;
+        public final boolean aiIsWhite;
+        /** Moves so far as {row, col}, black first. */
+        public final List<int[]> moves;
+        public final boolean whiteToMove, thinking;
+        /** "white", "black", "draw" or null while the game goes on. */
+        public final String result;
+
+        GameState(String id, int size, boolean aiIsWhite, List<int[]> moves, boolean whiteToMove,
+                  boolean thinking, String result) {
+            this.id = id;
+            this.size = size;
+            this.aiIsWhite = aiIsWhite;
+            this.moves = moves;
+            this.whiteToMove = whiteToMove;
+            this.thinking = thinking;
+            this.result = result;
+        }
+    }
+
+    // All fields are guarded by the game's monitor
+    private static final class Game {
+        final String id;
+        final Position board;
+        final Minimax ai;
+        final boolean aiIsWhite;
+        final List<int[]> moves = new ArrayList<>();
+        boolean whiteToMove, thinking;
+        String result;
+        // token of the running search, null when idle
+        CancellationToken search;
+        volatile long lastAccess = System.nanoTime();
+
+        Game(String id, int size, boolean aiIsWhite, int ttMegabytes, PositionCache cache, OpeningBook book) {
+            this.id = id;
+            this.board = Position.create(size);
+            this.aiIsWhite = aiIsWhite;
+            this.ai = new Minimax(board, aiIsWhite, 0, ttMegabytes);
+            ai.setPositionCache(cache);
+            ai.setOpeningBook(book);
+        }
+
+        void apply(int row, int col) {
+            board.addStone(col, row, whiteToMove);
+            moves.add(new int[]{row, col});
+            if (board.checkWinLast()) result = whiteToMove ? "white" : "black";
+            else if (board.getStoneCount() == board.getSize() * board.getSize()) result = "draw";
+            whiteToMove = !whiteToMove;
+        }
+
+        GameState snapshot() {
+            return new GameState(id, board.getSize(), aiIsWhite, new ArrayList<>(moves), whiteToMove, thinking, result);
+        }
+
+        // Ends the game's search and pondering; a cancelled search plays no move
+        void cancel() {
+            if (search != null) search.cancel();
+            ai.stopPondering();
+        }
+    }
+
+    private final Map<String, Game> games = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor searchPool;
+    private final int maxGames, ttMegabytes;
+    private final long idleNanos;
+    private volatile PositionCache cache;
+    private volatile OpeningBook book;
+
+    /**
+     * @param searchThreads  searches running at once
+     * @param queueLength    searches waiting for a thread before requests are refused
+     * @param maxGames       games held at once
+     * @param ttMegabytes    transposition table of each game; a game holds about this many
+     *                       megabytes of heap, so maxGames * ttMegabytes must fit in the heap
+     * @param idleMinutes    games untouched for this long are dropped
+     */
+    public GameEngine(int searchThreads, int queueLength, int maxGames, int ttMegabytes, int idleMinutes) {
+        this.searchPool = new ThreadPoolExecutor(searchThreads, searchThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLength), r -> {
+                    Thread t = new Thread(r, "engine-search");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.maxGames = maxGames;
+        this.ttMegabytes = ttMegabytes;
+        this.idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+    }
+
+    /**
+     * One search thread per core, a queue of four searches per thread, and games with a 2 MB
+     * table, as many as fit in half the heap (at most 1000).
+     */
+    public GameEngine() {
+        this(Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors(),
+                maxGames(Runtime.getRuntime().maxMemory(), 2), 2, 30);
+    }
+
+    // Games whose tables and boards fill at most half of the heap, so a full server still has
+    // room to search
+    static int maxGames(long heapBytes, int ttMegabytes) {
+        long perGame = ttMegabytes * 1024L * 1024 + GAME_OVERHEAD_BYTES;
+        return (int) Math.max(1, Math.min(DEFAULT_MAX_GAMES, heapBytes / 2 / perGame));
+    }
+
+    /** Lets the engines of games created from now on share the persistent cache, or none if null. */
+    public void setPositionCache(PositionCache cache) { this.cache = cache; }
+
+    /** Lets the engines of games created from now on play from the opening book, or none if null. */
+    public void setOpeningBook(OpeningBook book) { this.book = book; }
+
+    /** Starts a game; black moves first, so when the AI plays black the caller requests its move. */
+    public GameState createGame(int size, boolean aiIsWhite) {
+        if (games.size() >= maxGames) evictIdle();
+        if (games.size() >= maxGames) throw new BusyException("Too many games");
+        String id = UUID.randomUUID().toString();
+        Game g = new Game(id, size, aiIsWhite, ttMegabytes, cache, book);
+        games.put(id, g);
+        synchronized (g) {
+            return g.snapshot();
+        }
+    }
+
+    /** @return the state, or null if there is no such game */
+    public GameState getState(String id) {
+        Game g = games.get(id);
+        if (g == null) return null;
+        g.lastAccess = System.nanoTime();
+        synchronized (g) {
+            return g.snapshot();
+        }
+    }
+
+    public boolean deleteGame(String id) {
+        Game g = games.remove(id);
+        if (g == null) return false;
+        synchronized (g) {
+            g.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Plays the human's move.
+     * @throws IllegalArgumentException for an unknown game or an occupied or off-board cell
+     * @throws IllegalStateException if it is not the human's turn or the game is over
+     */
+    public GameState play(String id, int row, int col) {
+        Game g = game(id);
+        synchronized (g) {
+            if (g.result != null) throw new IllegalStateException("Game is over");
+            if (g.thinking || g.whiteToMove == g.aiIsWhite) throw new IllegalStateException("Not your turn");
+            int n = g.board.getSize();
+            if (row < 0 || col < 0 || row >= n || col >= n || g.board.stoneAt(col, row) != 0)
+                throw new IllegalArgumentException("Illegal move " + row + "," + col);
+            g.apply(row, col);
+            return g.snapshot();
+        }
+    }
+
+    /**
+     * Starts the AI's move on the search pool. The future completes with the game state after
+     * the move has been played.
+     * @param budgetMillis  1 to MAX_BUDGET_MILLIS; the search always has a time limit
+     * @throws BusyException if the search pool is saturated
+     * @throws IllegalArgumentException for a budget out of range
+     * @throws IllegalStateException if it is not the AI's turn or the game is over
+     */
+    public CompletableFuture<GameState> requestAiMove(String id, long budgetMillis) {
+        if (budgetMillis < 1 || budgetMillis > MAX_BUDGET_MILLIS)
+            throw new IllegalArgumentException("Budget must be 1 to " + MAX_BUDGET_MILLIS + " ms, got " + budgetMillis);
+        Game g = game(id);
+        CancellationToken token = new CancellationToken();
+        synchronized (g) {
+            if (g.result != null) throw new IllegalStateException("Game is over");
+            if (g.thinking || g.whiteToMove != g.aiIsWhite) throw new IllegalStateException("Not the AI's turn");
+            g.thinking = true;
+            g.search = token;
+        }
+        CompletableFuture<GameState> done = new CompletableFuture<>();
+        try {
+            searchPool.execute(() -> {
+                try {
+                    // the board is not changed while thinking, so the search runs outside the lock
+                    int[] mv = g.ai.calculateNextMove(MAX_DEPTH, budgetMillis, token);
+                    synchronized (g) {
+                        g.thinking = false;
+                        g.search = null;
+                        if (mv != null && games.containsKey(g.id)) g.apply(mv[0], mv[1]);
+                        done.complete(g.snapshot());
+                    }
+                } catch (Throwable e) {
+                    // errors too: the game must not stay thinking and the caller must not wait forever
+                    synchronized (g) {
+                        g.thinking = false;
+                        g.search = null;
+                    }
+                    done.completeExceptionally(e);
+                    if (e instanceof Error) throw (Error) e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (g) {
+                g.thinking = false;
+                g.search = null;
+            }
+            throw new BusyException("Search pool saturated");
+        }
+        return done;
+    }
+
+    public int gameCount() { return games.size(); }
+    public int queuedSearches() { return searchPool.getQueue().size(); }
+    public int activeSearches() { return searchPool.getActiveCount(); }
+
+    public void shutdown() {
+        for (Game g : games.values()) {
+            synchronized (g) {
+                g.cancel();
+            }
+        }
+        searchPool.shutdownNow();
+        games.clear();
+    }
+
+    private Game game(String id) {
+        Game g = games.get(id);
+        if (g == null) throw new IllegalArgumentException("No game " + id);
+        g.lastAccess = System.nanoTime();
+        return g;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Iterator<Game> it = games.values().iterator(); it.hasNext(); ) {
+            Game g = it.next();
+            if (now - g.lastAccess > idleNanos) {
+                it.remove();
+                synchronized (g) {
+                    g.cancel();
+                }
+            }
+        }
+    }
+}
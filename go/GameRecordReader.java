@@ -0,0 +1,169 @@
+package go;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams game records from a file or from every file under a directory, one game at a time,
+ * so archives of any size are read in constant memory.
+ *
+ * Two formats are understood, chosen by file extension:
+ *   .psq   Gomocup/Piskvork: a header line "Piskvorky 20x20, ..." and one "x,y,time" line per
+ *          move, 1-based from the top left; the first other line ends the game. One game per file.
+ *   other  move lists: one game per line, an optional board size (default 15)
+ *          followed by moves such as h8, with columns lettered from the left and rows numbered
+ *          from the bottom. Empty lines and lines starting with # are skipped.
+ * Boards of 5 to 26 lines are supported. Moves are checked when read: a record with an
+ * occupied or off-board cell is malformed.
+ */
+class GameRecordReader implements Closeable {
+    /** One game: the board size and the moves packed as row * size + col, black first. */
+    static final class GameRecord {
+        final String source;
+        final int size;
+        final int[] moves;
+
+        GameRecord(String source, int size, int[] moves) {
+            this.source = source;
+            this.size = size;
+            this.moves = moves;
+        }
+    }
+
+    private final Stream<Path> files;
+    private final Iterator<Path> pending;
+    private Path file;
+    private BufferedReader in;
+    private int lineNumber;
+
+    GameRecordReader(Path path) throws IOException {
+        files = Files.isDirectory(path)
+                ? Files.walk(path).filter(Files::isRegularFile)
+                : Stream.of(path);
+        pending = files.iterator();
+    }
+
+    /**
+     * @return the next game, or null at the end of the input
+     * @throws IllegalArgumentException for a malformed record; reading goes on with the next one
+     */
+    GameRecord next() throws IOException {
+        while (true) {
+            if (in == null) {
+                if (!pending.hasNext()) return null;
+                file = pending.next();
+                in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                lineNumber = 0;
+                if (file.getFileName().toString().toLowerCase().endsWith(".psq")) {
+                    // the whole file is one game
+                    try {
+                        return readPsq();
+                    } finally {
+                        closeFile();
+                    }
+                }
+            }
+            String line = in.readLine();
+            lineNumber++;
+            if (line == null) {
+                closeFile();
+                continue;
+            }
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            return parseMoveList(file + ":" + lineNumber, line);
+        }
+    }
+
+    private GameRecord readPsq() throws IOException {
+        String header = in.readLine();
+        if (header == null) throw new IllegalArgumentException(file + ": empty file");
+        int x = header.indexOf('x'), space = header.indexOf(' ');
+        int end = header.indexOf(',');
+        if (space < 0 || x < space || end < x) throw new IllegalArgumentException(file + ": not a Piskvork header: " + header);
+        int size = parseSize(file.toString(), header.substring(space + 1, x).trim(), 26);
+        Board b = new Board(size);
+        int[] moves = new int[size * size];
+        int count = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.trim().split(",");
+            if (parts.length != 3) break;
+            int col, row;
+            try {
+                col = Integer.parseInt(parts[0].trim()) - 1;
+                row = Integer.parseInt(parts[1].trim()) - 1;
+            } catch (NumberFormatException e) {
+                break;
+            }
+            moves[count] = play(b, file.toString(), row, col, count);
+            count++;
+        }
+        return new GameRecord(file.toString(), size, Arrays.copyOf(moves, count));
+    }
+
+    static GameRecord parseMoveList(String source, String line) {
+        String[] tokens = line.split("\\s+");
+        int first = 0, size = 15;
+        if (Character.isDigit(tokens[0].charAt(0))) {
+            size = parseSize(source, tokens[0], 26);
+            first = 1;
+        }
+        Board b = new Board(size);
+        int[] moves = new int[tokens.length - first];
+        for (int i = first; i < tokens.length; i++) {
+            String t = tokens[i].toLowerCase();
+            int col = t.charAt(0) - 'a', number;
+            try {
+                number = Integer.parseInt(t.substring(1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(source + ": bad move " + tokens[i]);
+            }
+            if (col < 0 || col >= 26) throw new IllegalArgumentException(source + ": bad move " + tokens[i]);
+            moves[i - first] = play(b, source, size - number, col, i - first);
+        }
+        return new GameRecord(source, size, moves);
+    }
+
+    // Plays a move of the record onto the replay board and returns it packed
+    private static int play(Board b, String source, int row, int col, int ply) {
+        int n = b.getSize();
+        if (!b.addStone(col, row, ply % 2 == 1))
+            throw new IllegalArgumentException(source + ": illegal move " + (ply + 1) + " at " + formatMove(row * n + col, n));
+        return row * n + col;
+    }
+
+    private static int parseSize(String source, String s, int max) {
+        int size;
+        try {
+            size = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(source + ": bad board size " + s);
+        }
+        if (size < 5 || size > max) throw new IllegalArgumentException(source + ": unsupported board size " + size);
+        return size;
+    }
+
+    /** A packed move in move-list notation, e.g. h8. */
+    static String formatMove(int move, int size) {
+        return (char) ('a' + move % size) + Integer.toString(size - move / size);
+    }
+
+    private void closeFile() throws IOException {
+        in.close();
+        in = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) closeFile();
+        files.close();
+    }
+}
@@ -0,0 +1,186 @@
+package go;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP/JSON front end of GameEngine on the JDK's embedded HttpServer. Requests are handled on
+ * virtual threads when the runtime has them (JDK 21+), else on a cached thread pool; searches
+ * always run on the engine's bounded pool.
+ *
+ *   POST   /games?size=15&ai=white       new game                          201
+ *   GET    /games/{id}                   state                             200
+ *   POST   /games/{id}/moves?row=7&col=7 human move                        200, 409 if not allowed
+ *   POST   /games/{id}/ai?budget=500     start the AI move                 202
+ *   POST   /games/{id}/ai?budget=500&wait=true   AI move, answer when done 200
+ *   DELETE /games/{id}                                                     204
+ *
+ * The budget is 1 to 60000 ms (default 1000), anything else answers 400; deleting a game
+ * cancels its search. A saturated search pool answers 503 with Retry-After. States look like
+ * {"id":"..","size":15,"ai":"white","toMove":"black","thinking":false,"result":null,"moves":[[7,7],[7,8]]}.
+ *
+ * Usage: java go.GameServer [port [cacheFile [bookFile]]]
+ * With a cache file, all games share a persistent PositionCache of 256 MB kept in that file;
+ * with a book file (see OpeningBookBuilder) they play its opening moves.
+ */
+public class GameServer {
+    private final GameEngine engine;
+    private final HttpServer server;
+    private final ExecutorService requests;
+
+    public GameServer(GameEngine engine, int port) throws IOException {
+        this.engine = engine;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.requests = requestExecutor();
+        server.setExecutor(requests);
+        server.createContext("/games", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        GameEngine engine = new GameEngine();
+        if (args.length > 1) engine.setPositionCache(PositionCache.open(Paths.get(args[1]), 256));
+        if (args.length > 2) engine.setOpeningBook(OpeningBook.open(Paths.get(args[2])));
+        GameServer s = new GameServer(engine, port);
+        s.start();
+        System.out.println("Gomoku engine listening on port " + s.getPort());
+    }
+
+    public void start() { server.start(); }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    public void stop() {
+        server.stop(0);
+        requests.shutdownNow();
+        engine.shutdown();
+    }
+
+    // Virtual threads through reflection so the code still compiles and runs on JDK 17
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "http-request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String[] path = ex.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+            String method = ex.getRequestMethod();
+            // path = ["", "games", id, action]
+            if (path.length == 2 && method.equals("POST")) {
+                int size = Integer.parseInt(q.getOrDefault("size", "15"));
+                if (size < 5 || size > SparseBoard.MAX_SIZE) throw new IllegalArgumentException("Unsupported board size " + size);
+                send(ex, 201, json(engine.createGame(size, !"black".equals(q.get("ai")))));
+                return;
+            }
+            if (path.length < 3) {
+                send(ex, 404, error("Not found"));
+                return;
+            }
+            String id = path[2];
+            GameEngine.GameState state = engine.getState(id);
+            if (state == null) {
+                send(ex, 404, error("No game " + id));
+                return;
+            }
+            String action = path.length > 3 ? path[3] : "";
+            if (action.isEmpty() && method.equals("GET")) {
+                send(ex, 200, json(state));
+            } else if (action.isEmpty() && method.equals("DELETE")) {
+                engine.deleteGame(id);
+                send(ex, 204, null);
+            } else if (action.equals("moves") && method.equals("POST")) {
+                send(ex, 200, json(engine.play(id, Integer.parseInt(q.get("row")), Integer.parseInt(q.get("col")))));
+            } else if (action.equals("ai") && method.equals("POST")) {
+                // a budget of 0 or less would mean an unbounded search
+                long budget = Long.parseLong(q.getOrDefault("budget", "1000"));
+                if (budget < 1 || budget > GameEngine.MAX_BUDGET_MILLIS)
+                    throw new IllegalArgumentException("budget must be 1 to " + GameEngine.MAX_BUDGET_MILLIS);
+                CompletableFuture<GameEngine.GameState> result = engine.requestAiMove(id, budget);
+                if (Boolean.parseBoolean(q.get("wait"))) send(ex, 200, json(result.get()));
+                else send(ex, 202, json(engine.getState(id)));
+            } else {
+                send(ex, 405, error("Unsupported " + method + " " + ex.getRequestURI().getPath()));
+            }
+        } catch (GameEngine.BusyException e) {
+            ex.getResponseHeaders().set("Retry-After", "1");
+            send(ex, 503, error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            send(ex, 409, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            // also a missing or malformed number
+            send(ex, 400, error(e.getMessage() == null ? "Bad request" : e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(ex, 503, error("Interrupted"));
+        } catch (ExecutionException e) {
+            send(ex, 500, error(String.valueOf(e.getCause())));
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        if (body == null) {
+            ex.sendResponseHeaders(status, -1);
+            ex.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static String json(GameEngine.GameState s) {
+        StringBuilder sb = new StringBuilder(64 + 8 * s.moves.size());
+        sb.append("{\"id\":\"").append(s.id).append("\",\"size\":").append(s.size)
+          .append(",\"ai\":\"").append(s.aiIsWhite ? "white" : "black")
+          .append("\",\"toMove\":\"").append(s.whiteToMove ? "white" : "black")
+          .append("\",\"thinking\":").append(s.thinking)
+          .append(",\"result\":").append(s.result == null ? "null" : "\"" + s.result + "\"")
+          .append(",\"moves\":[");
+        for (int i = 0; i < s.moves.size(); i++) {
+            int[] m = s.moves.get(i);
+            if (i > 0) sb.append(',');
+            sb.append('[').append(m[0]).append(',').append(m[1]).append(']');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+}
@@ -22,12 +22,13 @@ class IntroFrame extends JFrame {
     private JComboBox<String> sizeCombo;
     private JComboBox<String> difficultyCombo;
     private JComboBox<String> firstCombo;
+    private JComboBox<String> engineCombo;
     private JButton startBtn;
 
     public IntroFrame() {
         setTitle("Welcome to Gomoku");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
-        setSize(500, 400);
+        setSize(500, 440);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(15,15));
         getContentPane().setBackground(new Color(30, 87, 153));
@@ -49,7 +50,7 @@ class IntroFrame extends JFrame {
             "Instructions:\n" +
             "Players alternate placing stones to get five in a row.\n" +
             "Black always moves first.\n" +
-            "Select board size, difficulty, and who starts.\n"
+            "Select board size, difficulty, who starts and the AI engine.\n"
         );
         instructions.setEditable(false);
         instructions.setLineWrap(true);
@@ -60,14 +61,14 @@ class IntroFrame extends JFrame {
         instructions.setBorder(new EmptyBorder(10,10,10,10));
         middle.add(instructions, BorderLayout.NORTH);
 
-        JPanel settings = new JPanel(new GridLayout(3, 2, 10, 10));
+        JPanel settings = new JPanel(new GridLayout(4, 2, 10, 10));
         settings.setBackground(new Color(30, 87, 153));
         settings.setBorder(new EmptyBorder(10,40,10,40));
 
         JLabel lblSize = new JLabel("Board Size:", SwingConstants.RIGHT);
         styleLabel(lblSize);
         settings.add(lblSize);
-        sizeCombo = new JComboBox<>(new String[]{"15 × 15", "19 × 19"});
+        sizeCombo = new JComboBox<>(new String[]{"15 × 15", "19 × 19", "50 × 50"});
         styleCombo(sizeCombo);
         settings.add(sizeCombo);
 
@@ -85,6 +86,13 @@ class IntroFrame extends JFrame {
         styleCombo(firstCombo);
         settings.add(firstCombo);
 
+        JLabel lblEngine = new JLabel("AI Engine:", SwingConstants.RIGHT);
+        styleLabel(lblEngine);
+        settings.add(lblEngine);
+        engineCombo = new JComboBox<>(new String[]{"Alpha-beta", "Monte Carlo"});
+        styleCombo(engineCombo);
+        settings.add(engineCombo);
+
         middle.add(settings, BorderLayout.CENTER);
         add(middle, BorderLayout.CENTER);
 
@@ -116,11 +124,12 @@ class IntroFrame extends JFrame {
     }
 
     private void launchGame() {
-        int size = sizeCombo.getSelectedIndex() == 1 ? 19 : 15;
+        int size = new int[]{15, 19, 50}[sizeCombo.getSelectedIndex()];
         int difficulty = difficultyCombo.getSelectedIndex();
         boolean aiFirst = firstCombo.getSelectedIndex() == 0;
+        boolean monteCarlo = engineCombo.getSelectedIndex() == 1;
         dispose();
-        new GomokuUI(size, difficulty, aiFirst).setVisible(true);
+        new GomokuUI(size, difficulty, aiFirst, monteCarlo).setVisible(true);
     }
 }
 
@@ -128,7 +137,9 @@ class IntroFrame extends JFrame {
 @SuppressWarnings("serial")
 class GomokuUI extends JFrame {
     private Board board;
-    private Minimax ai;
+    private Engine ai;
+    // hint search for the human's side, separate from the AI so its pondering goes on
+    private Minimax analyst;
     private BoardPanel boardPanel;
     private JButton restartBtn;
     private JButton hintBtn;
@@ -137,9 +148,19 @@ class GomokuUI extends JFrame {
     private final int difficulty;
     private final boolean aiFirst;
     private final boolean aiIsWhite;
-
-    public GomokuUI(int size, int difficulty, boolean aiFirst) {
+    private final boolean monteCarlo;
+    // token of the background search in progress, null when idle; only touched on the EDT
+    private CancellationToken searchToken;
+    private JCheckBoxMenuItem ponderItem;
+    // analysis cache shared by all games and kept across restarts; opened on first use
+    private static PositionCache cache;
+    private static OpeningBook book;
+    private static boolean cacheOpened;
+    private static boolean bookOpened;
+
+    public GomokuUI(int size, int difficulty, boolean aiFirst, boolean monteCarlo) {
         this.difficulty = difficulty;
+        this.monteCarlo = monteCarlo;
         this.aiFirst = aiFirst;
         this.aiIsWhite = !aiFirst; // AI is White if Player goes first
 
@@ -148,6 +169,10 @@ class GomokuUI extends JFrame {
         setSize(700, 800);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(10,10));
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) { closeEngines(); }
+        });
         initMenu();
         initComponents();
         startNewGame(size);
@@ -158,12 +183,17 @@ class GomokuUI extends JFrame {
         JMenu gameMenu = new JMenu("Game");
         JMenuItem newItem = new JMenuItem("New Intro");
         newItem.addActionListener(e -> {
+            closeEngines();
             dispose();
             new IntroFrame().setVisible(true);
         });
         JMenuItem exitItem = new JMenuItem("Exit");
         exitItem.addActionListener(e -> System.exit(0));
+        // Let the AI keep searching while the player thinks
+        ponderItem = new JCheckBoxMenuItem("Think on your turn", true);
+        ponderItem.addActionListener(e -> { if (!ponderItem.isSelected()) ai.stopPondering(); });
         gameMenu.add(newItem);
+        gameMenu.add(ponderItem);
         gameMenu.addSeparator();
         gameMenu.add(exitItem);
         menuBar.add(gameMenu);
@@ -178,6 +208,7 @@ class GomokuUI extends JFrame {
         restartBtn = new JButton("Restart");
         styleActionButton(restartBtn);
         restartBtn.addActionListener(e -> {
+            closeEngines();
             dispose();
             new IntroFrame().setVisible(true);
         });
@@ -216,8 +247,22 @@ class GomokuUI extends JFrame {
     }
 
     private void startNewGame(int size) {
+        // the engines of a previous game end their helper threads
+        if (ai != null) ai.close();
+        if (analyst != null) analyst.close();
         board = new Board(size);
-        ai = new Minimax(board, aiIsWhite, difficulty);
+        if (monteCarlo) {
+            // MCTS grows one tree from all cores; the difficulty only sets its time budget
+            ai = new MonteCarlo(board, aiIsWhite);
+            ai.setThreads(Runtime.getRuntime().availableProcessors());
+        } else {
+            Minimax minimax = new Minimax(board, aiIsWhite, difficulty);
+            minimax.setPositionCache(positionCache());
+            minimax.setOpeningBook(openingBook());
+            ai = minimax;
+        }
+        analyst = new Minimax(board, !aiIsWhite, 0, 16);
+        analyst.setPositionCache(positionCache());
         boardPanel.resetHint();
         boardPanel.setBoard(board);
 
@@ -236,8 +281,39 @@ class GomokuUI extends JFrame {
         boardPanel.repaint();
     }
 
+    // ~/.gomoku/analysis.cache; without a usable file the AI just plays without it
+    private static synchronized PositionCache positionCache() {
+        if (!cacheOpened) {
+            cacheOpened = true;
+            try {
+                cache = PositionCache.open(gomokuDir().resolve("analysis.cache"), 64);
+            } catch (java.io.IOException | RuntimeException e) {
+                System.err.println("No analysis cache: " + e);
+            }
+        }
+        return cache;
+    }
+
+    // ~/.gomoku/opening.book if it was built, otherwise null
+    private static synchronized OpeningBook openingBook() {
+        if (!bookOpened) {
+            bookOpened = true;
+            java.nio.file.Path file = gomokuDir().resolve("opening.book");
+            try {
+                if (java.nio.file.Files.exists(file)) book = OpeningBook.open(file);
+            } catch (java.io.IOException e) {
+                System.err.println("No opening book: " + e);
+            }
+        }
+        return book;
+    }
+
+    private static java.nio.file.Path gomokuDir() {
+        return java.nio.file.Paths.get(System.getProperty("user.home"), ".gomoku");
+    }
+
     void handleClick(int x, int y) {
-        if (board.checkWinLast()) return;
+        if (searchToken != null || board.checkWinLast()) return;
         int cell = boardPanel.pixelToCell(x, y);
         if (cell < 0) return;
         int row = cell / board.getSize(), col = cell % board.getSize();
@@ -251,60 +327,122 @@ class GomokuUI extends JFrame {
 
         // Check for human win
         if (board.checkWin(col, row, humanIsWhite)) {
+            ai.stopPondering();
             statusLabel.setText("You win!");
             return;
         }
 
         // Now AI’s turn
         statusLabel.setText("AI is thinking...");
+        aiMove();
+    }
+
+    /**
+     * Runs a search of the engine on a background thread while the EDT keeps painting. Progress
+     * goes to the status label; the result is handed to onResult on the EDT unless the search
+     * was cancelled.
+     */
+    private <T> void runSearch(Engine engine, java.util.function.Function<CancellationToken, T> search,
+                               java.util.function.Consumer<T> onResult) {
+        CancellationToken token = new CancellationToken();
+        searchToken = token;
         aiProgress.setVisible(true);
+        new SwingWorker<T, String>() {
+            @Override
+            protected T doInBackground() {
+                engine.setProgressListener((d, best, nodes, nps) -> publish(String.format(
+                    "AI is thinking... depth %d, %,d %s/s%s", d, nps, engine instanceof MonteCarlo ? "playouts" : "nodes",
+                    best == null ? "" : ", best " + cellName(best))));
+                try {
+                    return search.apply(token);
+                } finally {
+                    engine.setProgressListener(null);
+                }
+            }
+
+            @Override
+            protected void process(List<String> chunks) {
+                if (!token.isCancelled()) statusLabel.setText(chunks.get(chunks.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                if (searchToken == token) searchToken = null;
+                aiProgress.setVisible(false);
+                if (token.isCancelled()) return;
+                try {
+                    onResult.accept(get());
+                } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+                    statusLabel.setText("AI search failed: " + e.getCause());
+                }
+            }
+        }.execute();
+    }
+
+    private void cancelSearch() {
+        if (searchToken != null) searchToken.cancel();
+        if (ai != null) ai.stopPondering();
+    }
 
-        SwingUtilities.invokeLater(this::aiMove);
+    // The frame goes away: cancels the search and ends the engines' threads
+    private void closeEngines() {
+        cancelSearch();
+        if (ai != null) ai.close();
+        if (analyst != null) analyst.close();
+    }
+
+    // Board coordinates as shown to the player, e.g. H8
+    private static String cellName(int[] move) {
+        return (char) ('A' + move[1]) + Integer.toString(move[0] + 1);
+    }
+
+    private void showTurn() {
+        statusLabel.setText(aiIsWhite ? "Your (Black) turn" : "Your (White) turn");
     }
 
     private void aiMove() {
+        // Depth caps per difficulty; the time budget bounds the iterative deepening.
+        // Impossible searches selectively, which reaches depth 8-10 in the same budget.
         int depth;
-        if (difficulty == 0) depth = 3;
-        else if (difficulty == 1) depth = 4;
-        else /* Impossible */ depth = 5;
-
-        int[] move = ai.calculateNextMove(depth);
-        if (move != null) {
-            // move[0] = row, move[1] = col; AI color = aiIsWhite
-            board.addStone(move[1], move[0], aiIsWhite);
-        }
-        boardPanel.repaint();
-
-        aiProgress.setVisible(false);
+        long budgetMillis;
+        if (difficulty == 0) { depth = 3; budgetMillis = 1000; }
+        else if (difficulty == 1) { depth = 4; budgetMillis = 2000; }
+        else /* Impossible */ { depth = 8; budgetMillis = 4000; }
+
+        runSearch(ai, token -> ai.calculateNextMove(depth, budgetMillis, token), move -> {
+            if (move != null) {
+                // move[0] = row, move[1] = col; AI color = aiIsWhite
+                board.addStone(move[1], move[0], aiIsWhite);
+            }
+            boardPanel.repaint();
 
-        // Check for AI win
-        if (board.checkWinLast()) {
-            statusLabel.setText("AI wins!");
-        } else {
-            // Back to human turn
-            if (aiIsWhite) {
-                statusLabel.setText("Your (Black) turn");
+            // Check for AI win
+            if (board.checkWinLast()) {
+                statusLabel.setText("AI wins!");
             } else {
-                statusLabel.setText("Your (White) turn");
+                // Back to human turn; search the predicted reply meanwhile
+                showTurn();
+                if (ponderItem.isSelected()) ai.startPondering(depth);
             }
-        }
+        });
     }
 
     private void showHint() {
-        if (board.checkWinLast()) return;
-        aiProgress.setVisible(true);
-        SwingUtilities.invokeLater(() -> {
-            int[] hint = ai.calculateNextMove(3);
-            if (hint != null) {
-                int row = hint[0], col = hint[1];
-                if (board.getBoardMatrix()[row][col] != 0) {
-                    List<int[]> mvs = board.generateMoves();
-                    if (!mvs.isEmpty()) { row = mvs.get(0)[0]; col = mvs.get(0)[1]; }
-                }
-                boardPanel.setHintCell(row, col);
-            }
+        if (searchToken != null || board.checkWinLast()) return;
+        // the best three moves for the human, scored from the human's side
+        runSearch(analyst, token -> analyst.analyze(4, 1000, 3, !aiIsWhite, token), lines -> {
+            showTurn();
+            if (lines.isEmpty()) return;
+            boardPanel.setHintCell(lines.get(0).getMove()[0], lines.get(0).getMove()[1]);
             boardPanel.repaint();
-            aiProgress.setVisible(false);
+            StringBuilder text = new StringBuilder(statusLabel.getText()).append(" - hint:");
+            for (PrincipalVariation line : lines) {
+                int score = line.getScore();
+                text.append(' ').append(cellName(line.getMove())).append(" (")
+                    .append(score >= Minimax.MATE_BOUND ? "wins" : score <= -Minimax.MATE_BOUND ? "loses"
+                            : String.format("%+d", score)).append(')');
+            }
+            statusLabel.setText(text.toString());
         });
     }
 
@@ -375,95 +513,3 @@ class GomokuUI extends JFrame {
         }
     }
 }
-
-/**
- * Manages board state and win logic
- */
-class Board {
-    private int size;
-    private int[][] matrix;
-
-    // initialize to “no move yet”
-    private int lastX = -1, lastY = -1;
-
-    public Board(int size) {
-        this.size = size;
-        matrix = new int[size][size];
-    }
-
-    public Board(Board other) {
-        this.size = other.size;
-        this.matrix = new int[size][size];
-        for (int i = 0; i < size; i++)
-            System.arraycopy(other.matrix[i], 0, this.matrix[i], 0, size);
-        // copy lastX/lastY as well
-        this.lastX = other.lastX;
-        this.lastY = other.lastY;
-    }
-
-    public int getSize() { return size; }
-    public int[][] getBoardMatrix() { return matrix; }
-
-    public boolean addStone(int x, int y, boolean white) {
-        if (x < 0 || y < 0 || x >= size || y >= size || matrix[y][x] != 0) return false;
-        matrix[y][x] = white ? 1 : 2;
-        lastX = x;
-        lastY = y;
-        return true;
-    }
-
-    public boolean checkWinLast() {
-        if (lastX < 0 || lastY < 0) return false;
-        int t = matrix[lastY][lastX];
-        return Check.win(matrix, lastX, lastY, t);
-    }
-
-    public boolean checkWin(int x, int y, boolean white) {
-        return Check.win(matrix, x, y, white ? 1 : 2);
-    }
-
-    public List<int[]> generateMoves() { return Check.generateMoves(matrix); }
-    public void thinkingStarted() {}
-    public void thinkingFinished() {}
-    public void addStoneNoGUI(int x, int y, boolean black) { addStone(x, y, !black); }
-    public void removeStoneNoGUI(int x, int y) { matrix[y][x] = 0; }
-}
-
-/**
- * Utility: win detection & move generation
- */
-class Check {
-    public static boolean win(int[][] m, int x, int y, int t) {
-        int[][] dirs = {{1,0},{0,1},{1,1},{1,-1}};
-        for (int[] d : dirs) {
-            int cnt = 1 + count(m, x, y, d[0], d[1], t)
-                       + count(m, x, y, -d[0], -d[1], t);
-            if (cnt >= 5) return true;
-        }
-        return false;
-    }
-    private static int count(int[][] m, int x, int y, int dx, int dy, int t) {
-        int c = 0;
-        for (int i = 1; i < 5; i++) {
-            int nx = x + dx*i, ny = y + dy*i;
-            if (nx<0||ny<0||nx>=m.length||ny>=m.length||m[ny][nx]!=t) break;
-            c++;
-        }
-        return c;
-    }
-    public static java.util.ArrayList<int[]> generateMoves(int[][] m) {
-        java.util.ArrayList<int[]> moves = new java.util.ArrayList<>();
-        int n = m.length;
-        boolean[][] seen = new boolean[n][n];
-        for (int r = 0; r < n; r++) for (int c = 0; c < n; c++) if (m[r][c] != 0) {
-            for (int dr = -1; dr <= 1; dr++) for (int dc = -1; dc <= 1; dc++) {
-                int nr = r+dr, nc = c+dc;
-                if (nr>=0&&nc>=0&&nr<n&&nc<n&&m[nr][nc]==0&&!seen[nr][nc]){
-                    seen[nr][nc]=true; moves.add(new int[]{nr,nc});
-                }
-            }
-        }
-        if (moves.isEmpty()) moves.add(new int[]{n/2,n/2});
-        return moves;
-    }
-}
@@ -0,0 +1,170 @@
+package go;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of the HTTP engine service: plays many simulated games at once, each on its own
+ * thread, with random human moves next to the stones and AI moves requested with wait=true.
+ * A 503 is retried with exponential back-off. Reports throughput and latency percentiles.
+ *
+ * Usage: java go.LoadTest [key=value ...]
+ *   games=200      simulated games, all running at once
+ *   moves=30       stones after which a game is abandoned
+ *   size=15        board size
+ *   budget=100     AI time budget per move in ms
+ *   url=...        server to test, e.g. http://localhost:8080; default: start one in this JVM
+ */
+public class LoadTest {
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    private static final Pattern LAST_MOVE = Pattern.compile("\\[(\\d+),(\\d+)\\]\\]\\}$");
+    private static final Pattern RESULT = Pattern.compile("\"result\":(null|\"\\w+\")");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final String url;
+    private final int size, maxMoves;
+    private final long budget;
+    private final List<Long> aiLatencies = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> moveLatencies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong requests = new AtomicLong(), rejected = new AtomicLong(), failures = new AtomicLong();
+
+    LoadTest(String url, int size, int maxMoves, long budget) {
+        this.url = url;
+        this.size = size;
+        this.maxMoves = maxMoves;
+        this.budget = budget;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 200, moves = 30, size = 15;
+        long budget = 100;
+        String url = null;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "games": games = Integer.parseInt(value); break;
+                case "moves": moves = Integer.parseInt(value); break;
+                case "size": size = Integer.parseInt(value); break;
+                case "budget": budget = Long.parseLong(value); break;
+                case "url": url = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        GameServer local = null;
+        if (url == null) {
+            local = new GameServer(new GameEngine(), 0);
+            local.start();
+            url = "http://localhost:" + local.getPort();
+        }
+        System.out.printf("%d games of up to %d stones on %dx%d, AI budget %d ms, against %s%n",
+                games, moves, size, size, budget, url);
+        new LoadTest(url, size, moves, budget).run(games);
+        if (local != null) local.stop();
+    }
+
+    void run(int games) throws Exception {
+        ExecutorService clients = GameServer.requestExecutor();
+        long start = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            long seed = i;
+            running.add(clients.submit(() -> {
+                try {
+                    playGame(new Random(seed));
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> f : running) f.get();
+        clients.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%.1f s, %d requests (%.0f/s), %d AI moves (%.1f/s), %d rejected with 503, %d games failed%n",
+                seconds, requests.get(), requests.get() / seconds, aiLatencies.size(), aiLatencies.size() / seconds,
+                rejected.get(), failures.get());
+        report("AI move", aiLatencies);
+        report("human move", moveLatencies);
+    }
+
+    private void playGame(Random rnd) throws Exception {
+        boolean aiIsWhite = rnd.nextBoolean();
+        String state = post("/games?size=" + size + "&ai=" + (aiIsWhite ? "white" : "black"), null);
+        Matcher id = ID.matcher(state);
+        if (!id.find()) throw new IllegalStateException("No game id in " + state);
+        String game = "/games/" + id.group(1);
+        Position local = Position.create(size);
+        int[] cells = new int[size * size];
+        boolean whiteToMove = false;
+        while (local.getStoneCount() < maxMoves && !finished(state)) {
+            int row, col;
+            if (whiteToMove == aiIsWhite) {
+                state = post(game + "/ai?wait=true&budget=" + budget, aiLatencies);
+                Matcher last = LAST_MOVE.matcher(state);
+                if (!last.find()) throw new IllegalStateException("No move in " + state);
+                row = Integer.parseInt(last.group(1));
+                col = Integer.parseInt(last.group(2));
+            } else {
+                int mv = cells[rnd.nextInt(local.fillCandidates(cells))];
+                row = mv / size;
+                col = mv % size;
+                state = post(game + "/moves?row=" + row + "&col=" + col, moveLatencies);
+            }
+            local.addStone(col, row, whiteToMove);
+            whiteToMove = !whiteToMove;
+        }
+        send(HttpRequest.newBuilder(URI.create(url + game)).DELETE().build());
+    }
+
+    private static boolean finished(String state) {
+        Matcher m = RESULT.matcher(state);
+        return m.find() && !m.group(1).equals("null");
+    }
+
+    // POSTs until the server accepts, backing off on 503; records the latency of the accepted call
+    private String post(String path, List<Long> latencies) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(url + path)).POST(HttpRequest.BodyPublishers.noBody()).build();
+        for (int attempt = 0; ; attempt++) {
+            long t = System.nanoTime();
+            HttpResponse<String> res = send(req);
+            if (res.statusCode() == 503) {
+                rejected.incrementAndGet();
+                // exponential back-off with jitter, capped at a second
+                long wait = Math.min(1000, 25L << Math.min(attempt, 6));
+                Thread.sleep(wait / 2 + ThreadLocalRandom.current().nextLong(wait / 2 + 1));
+                continue;
+            }
+            if (res.statusCode() >= 300) throw new IllegalStateException(res.statusCode() + " " + res.body());
+            if (latencies != null) latencies.add(System.nanoTime() - t);
+            return res.body();
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest req) throws Exception {
+        requests.incrementAndGet();
+        return client.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void report(String name, List<Long> latencies) {
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        System.out.printf("%-10s %7d calls, latency ms p50 %.1f p95 %.1f p99 %.1f max %.1f%n", name, sorted.length,
+                Arena.percentile(sorted, 50), Arena.percentile(sorted, 95), Arena.percentile(sorted, 99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+}
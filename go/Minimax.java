@@ -1,169 +1,984 @@
 package go;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public class Minimax {
-    public static int evaluationCount = 0;
-    private Board board;
+public class Minimax implements Engine {
+    private Position board;
     private boolean aiIsWhite;
     private int difficulty;             // 0=Normal, 1=Hard, 2=Impossible
     private static final int WIN_SCORE = 100_000_000;
+    // Search scores are ints from the side to move's point of view. A win in p plies scores
+    // MATE - p, so shorter wins and longer losses are preferred; everything beyond MATE_BOUND
+    // is a forced result and evaluations are clamped inside it.
+    static final int MATE = 1_000_000_000;
+    static final int MATE_BOUND = MATE - MoveOrdering.MAX_PLY;
+    private static final int INFINITY = MATE + 1;
+    // first aspiration half-width around the score of two iterations back; widened by 8 per failure
+    private static final int ASPIRATION_WINDOW = 256;
+    // xor-ed into the board hash when white is to move
+    static final long WHITE_TO_MOVE_KEY = 0x9E3779B97F4A7C15L;
+    static final int DEFAULT_TT_MEGABYTES = 64;
+    private final TranspositionTable tt;
+    private int candidateRadius = 1;
+
+    // selective search, see setSelectiveSearch
+    private boolean selective;
+    private int[] beamWidths = DEFAULT_BEAM_WIDTHS;
+    private static final int[] DEFAULT_BEAM_WIDTHS = {20, 14, 10, 8};
+    // moves searched at full depth before late-move reductions start
+    private static final int LMR_FULL_MOVES = 3;
+    // extra plies a path may gain from threat extensions
+    private static final int MAX_EXTENSIONS = 8;
+
+    // persistent analysis cache, see setPositionCache; used for nodes up to CACHE_PLIES from the
+    // root that are searched at least CACHE_MIN_DEPTH deep
+    private volatile PositionCache cache;
+    private volatile OpeningBook book;
+    private static final int CACHE_PLIES = 2;
+    private static final int CACHE_MIN_DEPTH = 2;
+    // mixed into cache keys: the same stones on another board size, or a selective search
+    // result, must not be taken for a full-width one. Cache keys are symmetry-canonical and
+    // cached moves are in the canonical frame.
+    static final long SIZE_KEY = 0xC2B2AE3D27D4EB4FL;
+    private static final long SELECTIVE_KEY = 0x165667B19E3779F9L;
+
+    // threat-space search run before the main search; the defence solver has smaller limits
+    // because it runs once per root candidate
+    private final ThreatSolver threats = new ThreatSolver(20_000, 50, 20, 4);
+    private final ThreatSolver defence = new ThreatSolver(5_000, 20, 20, 0);
+    private boolean threatSearch = true;
+    private volatile int[] threatLine;
+    // root moves the workers may search, null for all
+    private volatile boolean[] rootAllowed;
+    private long threatNodes;
+    private volatile SearchStats lastStats;
+    // score of the move the last search chose, see SearchResult.getScore
+    private volatile int lastScore;
+
+    // search workers; workers[0] runs on the calling thread, the others on the pool
+    private SearchWorker[] workers;
+    private ExecutorService pool;
+    // shared by all workers of the running search
+    private volatile boolean stop;
+    private volatile long deadline = Long.MAX_VALUE;
+    private volatile CancellationToken token = new CancellationToken();
+    private volatile ProgressListener listener;
+    private long searchStart, lastReport;
+
+    // background search on the predicted opponent reply, see startPondering
+    private ExecutorService ponderPool;
+    private Future<int[]> ponder;
+    private CancellationToken ponderToken;
+    private long ponderHash;
+    private int ponderStones, ponderHits;
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
 
     /**
      * @param board       current board
      * @param aiIsWhite   true if AI plays White, false if Black
      * @param difficulty  0=Normal,1=Hard,2=Impossible
      */
-    public Minimax(Board board, boolean aiIsWhite, int difficulty) {
+    public Minimax(Position board, boolean aiIsWhite, int difficulty) {
+        this(board, aiIsWhite, difficulty, DEFAULT_TT_MEGABYTES);
+    }
+
+    /**
+     * @param ttMegabytes  memory budget of the transposition table
+     */
+    public Minimax(Position board, boolean aiIsWhite, int difficulty, int ttMegabytes) {
         this.board = board;
         this.aiIsWhite = aiIsWhite;
         this.difficulty = difficulty;
+        this.selective = difficulty == 2;
+        this.tt = new TranspositionTable(ttMegabytes);
+        this.workers = new SearchWorker[]{ new SearchWorker(0, board.getSize()) };
     }
 
     public static int getWinScore() {
         return WIN_SCORE;
     }
 
-    public static double evaluateBoardForWhite(Board board, boolean blacksTurn) {
-        evaluationCount++;
-        double blackScore = getScore(board, true, blacksTurn);
-        double whiteScore = getScore(board, false, blacksTurn);
-        if (blackScore == 0) blackScore = 1.0;
-        return whiteScore / blackScore;
+    /**
+     * Score of the side to move minus the opponent's, clamped below the mate scores; search
+     * workers count their calls in SearchStats.
+     */
+    public static int evaluate(Position board, boolean whiteToMove) {
+        long own = getScore(board, !whiteToMove, !whiteToMove);
+        long opp = getScore(board, whiteToMove, !whiteToMove);
+        return (int) Math.max(-(MATE_BOUND - 1), Math.min(MATE_BOUND - 1, own - opp));
     }
 
-    public static int getScore(Board board, boolean forBlack, boolean blacksTurn) {
-        int[][] bm = board.getBoardMatrix();
-        return evaluateHorizontal(bm, forBlack, blacksTurn)
-             + evaluateVertical(bm, forBlack, blacksTurn)
-             + evaluateDiagonal(bm, forBlack, blacksTurn);
+    /**
+     * Sums the consecutive-set scores of every row, column and diagonal for one colour.
+     * The board maintains per-line scores incrementally, so this is a constant-time lookup;
+     * scanLines recomputes the same value from scratch.
+     */
+    public static int getScore(Position board, boolean forBlack, boolean blacksTurn) {
+        return board.lineScore(forBlack, forBlack == blacksTurn);
+    }
+
+    /** Full rescan of the line bitboards; same result as getScore. */
+    static int scanLines(Board board, boolean forBlack, boolean blacksTurn) {
+        boolean white = !forBlack;
+        boolean currentTurn = forBlack == blacksTurn;
+        PatternTable patterns = board.getPatternTable();
+        int n = board.getSize();
+        long full = board.fullMask();
+        int score = 0;
+        for (int i = 0; i < n; i++) {
+            score += patterns.score(board.rowBits(white, i), board.rowBits(!white, i), full, currentTurn);
+            score += patterns.score(board.colBits(white, i), board.colBits(!white, i), full, currentTurn);
+        }
+        for (int i = 0; i < board.lineCount(); i++) {
+            score += patterns.score(board.diagBits(white, i), board.diagBits(!white, i), board.diagMask(i), currentTurn);
+            score += patterns.score(board.antiBits(white, i), board.antiBits(!white, i), board.antiMask(i), currentTurn);
+        }
+        return score;
     }
 
     public int[] calculateNextMove(int plyDepth) {
+        return calculateNextMove(plyDepth, 0);
+    }
+
+    /**
+     * Iterative deepening search bounded by a wall-clock budget. Depths 1, 2, ... up to the
+     * difficulty-adjusted plyDepth are searched in turn, each seeded with the previous
+     * principal variation, and the move of the deepest completed iteration is returned.
+     * Depth 1 always completes, so a move is returned even for tiny budgets.
+     *
+     * With more than one thread (see setThreads) the helper workers run the same iterative
+     * deepening on their own board copies at staggered depths and share results only through
+     * the transposition table (Lazy SMP). The main worker's move is returned.
+     *
+     * @param timeBudgetMillis  budget for the whole move, 0 for no limit
+     */
+    @Override
+    public int[] calculateNextMove(int plyDepth, long timeBudgetMillis) {
+        return calculateNextMove(plyDepth, timeBudgetMillis, new CancellationToken());
+    }
+
+    /**
+     * Same as calculateNextMove(plyDepth, timeBudgetMillis), abortable from another thread.
+     * Returns null once the token is cancelled.
+     */
+    @Override
+    public int[] calculateNextMove(int plyDepth, long timeBudgetMillis, CancellationToken token) {
+        return calculate(plyDepth, timeBudgetMillis, token).getMove();
+    }
+
+    /**
+     * Same as calculateNextMove, also returning the statistics of the search. The statistics are
+     * emitted as a go.Search Flight Recorder event as well.
+     */
+    public SearchResult calculate(int plyDepth, long timeBudgetMillis, CancellationToken token) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
         // adjust depth by difficulty
         int depth = plyDepth + (difficulty == 1 ? 1 : difficulty == 2 ? 2 : 0);
         board.thinkingStarted();
-        int[] move;
-        // instant win search
-        Object[] bestWin = searchWinningMove(board);
+        long start = System.nanoTime();
+        long budgetDeadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        int[] move = null;
+        boolean searched = false;
+        Future<int[]> pondering = ponder;
+        ponder = null;
+        if (pondering != null) {
+            if (board.getHash() == ponderHash && board.getStoneCount() == ponderStones) {
+                // ponder hit: the running search is for this very position, let it finish against the clock
+                this.token = token;
+                deadline = budgetDeadline;
+                move = await(pondering);
+                searched = true;
+                ponderHits++;
+                event.ponderHit = true;
+            } else {
+                // ponder miss: drop the search but keep what it left in the hash and history tables
+                ponderToken.cancel();
+                await(pondering);
+            }
+        }
+        if (!searched) {
+            searchStart = lastReport = start;
+            deadline = budgetDeadline;
+            this.token = token;
+            tt.newSearch();
+            // the search runs on a copy so the game board is never touched
+            move = search(board.copy(), depth);
+        }
+        board.thinkingFinished();
+        SearchStats stats = collectStats(System.nanoTime() - start);
+        lastStats = stats;
+        event.end();
+        if (event.shouldCommit()) {
+            event.boardSize = board.getSize();
+            event.stones = board.getStoneCount();
+            event.threads = workers.length;
+            event.depth = stats.getDepth();
+            event.nodes = stats.getNodes();
+            event.evaluations = stats.getEvaluations();
+            event.cutoffs = stats.getCutoffs();
+            event.firstMoveCutoffs = stats.getFirstMoveCutoffs();
+            event.ttProbes = stats.getTtProbes();
+            event.ttHits = stats.getTtHits();
+            event.threatNodes = stats.getThreatNodes();
+            event.branchingFactor = stats.getEffectiveBranchingFactor();
+            event.nodesPerSecond = stats.getNodesPerSecond();
+            event.elapsed = stats.getElapsedNanos();
+            event.cancelled = token.isCancelled();
+            event.commit();
+        }
+        return new SearchResult(token.isCancelled() ? null : move, lastScore, stats);
+    }
+
+    private SearchStats collectStats(long elapsedNanos) {
+        long nodes = 0, evaluations = 0, cutoffs = 0, firstCutoffs = 0, probes = 0, hits = 0;
+        for (SearchWorker w : workers) {
+            nodes += w.nodes;
+            evaluations += w.evaluations;
+            cutoffs += w.cutoffs;
+            firstCutoffs += w.firstMoveCutoffs;
+            probes += w.ttProbes;
+            hits += w.ttHits;
+        }
+        return new SearchStats(nodes, evaluations, cutoffs, firstCutoffs, probes, hits, threatNodes,
+                workers[0].completedDepth, elapsedNanos);
+    }
+
+    /** Statistics of the last calculateNextMove, or null before the first. */
+    public SearchStats getLastStats() { return lastStats; }
+
+    // Instant win check, then the (parallel) iterative deepening; deadline and token must be set
+    private int[] search(Position root, int depth) {
+        root.setCandidateRadius(candidateRadius);
+        threatNodes = 0;
+        lastScore = 0;
+        int[] bestWin = searchWinningMove(root);
         if (bestWin != null) {
-            move = new int[]{(Integer) bestWin[1], (Integer) bestWin[2]};
-        } else {
-            Object[] res = minimaxSearchAB(depth, new Board(board), aiIsWhite, -Double.MAX_VALUE, Double.MAX_VALUE);
-            if (res[1] == null) move = null;
-            else move = new int[]{(Integer) res[1], (Integer) res[2]};
+            for (SearchWorker w : workers) w.reset();
+            lastScore = MATE - 1;
+            return bestWin;
         }
-        board.thinkingFinished(); evaluationCount = 0;
+        rootAllowed = null;
+        threatLine = null;
+        OpeningBook openings = book;
+        int[] bookMove = openings == null ? null : openings.probe(root, aiIsWhite);
+        if (bookMove != null) {
+            for (SearchWorker w : workers) w.reset();
+            return bookMove;
+        }
+        int[] cached = cachedMove(root, depth);
+        if (cached != null) return cached;
+        // the threat solver reads Board's line bitboards
+        if (threatSearch && root instanceof Board) {
+            Board dense = (Board) root;
+            int n = root.getSize();
+            // a forced win by fours or threats is played without the full-width search
+            int[] win = threats.solveVct(dense, aiIsWhite, token);
+            threatNodes += threats.getNodes();
+            if (win != null) {
+                threatLine = win;
+                for (SearchWorker w : workers) w.reset();
+                lastScore = MATE - Math.min(win.length, MoveOrdering.MAX_PLY - 1);
+                return new int[]{win[0] / n, win[0] % n};
+            }
+            // if the opponent has a forced win by fours, only search the moves that refute it
+            boolean threatened = defence.solveVcf(dense, !aiIsWhite, token) != null;
+            threatNodes += defence.getNodes();
+            if (threatened) rootAllowed = refutations(dense);
+        }
+        return runWorkers(root, depth, aiIsWhite, 1);
+    }
+
+    // Iterative deepening on all workers; returns the move of the main worker
+    private int[] runWorkers(Position root, int depth, boolean white, int lines) {
+        stop = false;
+        for (SearchWorker w : workers) w.prepare(root, depth, white, lines);
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < workers.length; i++) {
+            SearchWorker helper = workers[i];
+            // odd helpers start one ply deeper so the threads spread over two depths
+            helpers.add(pool.submit(() -> helper.iterate(depth, 1 + (helper.id & 1))));
+        }
+        int[] move = workers[0].iterate(depth, 1);
+        lastScore = workers[0].completedScore;
+        stop = true;
+        for (Future<?> f : helpers) await(f);
         return move;
     }
 
-        private Object[] minimaxSearchAB(int depth, Board node, boolean max, double alpha, double beta) {
-        // Terminal: check if the side who just moved has won
-        boolean justMovedIsWhite = !max;
-        if (hasFiveInARow(node, justMovedIsWhite)) {
-            double val = (justMovedIsWhite == aiIsWhite) ? +Double.MAX_VALUE : -Double.MAX_VALUE;
-            return new Object[]{ val, null, null };
+    /**
+     * Multi-PV analysis: the best moves of either side to move, each with its score and
+     * principal variation, from a single search. The book, the cache and the threat solver's
+     * shortcuts are skipped so every line gets an alpha-beta score; a running ponder search is
+     * stopped. The depth is used as given, without the difficulty adjustment.
+     *
+     * @param lines        number of moves wanted; fewer come back if there are fewer candidates
+     * @param whiteToMove  side whose moves are analysed
+     * @return lines best first, or an empty list once the token is cancelled
+     */
+    public List<PrincipalVariation> analyze(int plyDepth, long timeBudgetMillis, int lines, boolean whiteToMove,
+                                            CancellationToken token) {
+        if (lines < 1) throw new IllegalArgumentException("At least one line, got " + lines);
+        stopPondering();
+        board.thinkingStarted();
+        long start = System.nanoTime();
+        searchStart = lastReport = start;
+        deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+        this.token = token;
+        tt.newSearch();
+        Position root = board.copy();
+        root.setCandidateRadius(candidateRadius);
+        threatNodes = 0;
+        rootAllowed = null;
+        threatLine = null;
+        runWorkers(root, plyDepth, whiteToMove, lines);
+        board.thinkingFinished();
+        lastStats = collectStats(System.nanoTime() - start);
+        List<PrincipalVariation> result = new ArrayList<>();
+        if (token.isCancelled()) return result;
+        SearchWorker main = workers[0];
+        int n = root.getSize();
+        for (int i = 0; i < main.completedLineCount; i++) {
+            int[] pv = principalVariation(root, whiteToMove, main.completedMoves[i], main.completedDepth);
+            int[][] moves = new int[pv.length][];
+            for (int j = 0; j < pv.length; j++) moves[j] = new int[]{pv[j] / n, pv[j] % n};
+            result.add(new PrincipalVariation(moves, main.completedScores[i]));
         }
-        // Depth cutoff
-        if (depth == 0) {
-            return new Object[]{ evaluateBoardForWhite(node, !max), null, null };
+        return result;
+    }
+
+    // The first move followed by the hash moves of the positions it leads to, at most depth moves
+    private int[] principalVariation(Position root, boolean white, int first, int depth) {
+        int n = root.getSize();
+        int[] line = new int[Math.max(1, depth)];
+        TranspositionTable.Entry e = new TranspositionTable.Entry();
+        Position b = root.copy();
+        int length = 0, mv = first;
+        while (true) {
+            line[length++] = mv;
+            b.addStoneNoGUI(mv % n, mv / n, !white);
+            if (length >= depth || b.hasFiveThrough(mv % n, mv / n, white)) break;
+            white = !white;
+            if (!tt.probe(b.getHash() ^ (white ? WHITE_TO_MOVE_KEY : 0), e)) break;
+            mv = e.move;
+            if (mv < 0 || mv >= n * n || b.stoneAt(mv % n, mv / n) != 0) break;
         }
-        // Generate and order moves
-        List<int[]> moves = node.generateMoves();
-        if (moves.isEmpty()) {
-            // no moves: treat as draw/evaluation
-            return new Object[]{ evaluateBoardForWhite(node, !max), null, null };
+        return Arrays.copyOf(line, length);
+    }
+
+    // The move of an exact cache entry at least as deep as the search, or of a forced result
+    // at any depth; null if there is none
+    private int[] cachedMove(Position root, int depth) {
+        PositionCache c = cache;
+        if (c == null) return null;
+        TranspositionTable.Entry e = new TranspositionTable.Entry();
+        int n = root.getSize();
+        int symmetry = root.getCanonicalTransform();
+        if (!c.probe(cacheKey(root.getSymmetricHash(symmetry), aiIsWhite, n, selective), e)
+                || (e.depth < depth && Math.abs(e.score) < MATE_BOUND) || e.bound != TranspositionTable.EXACT
+                || e.move < 0 || e.move >= n * n) return null;
+        int mv = Position.transformMove(e.move, Position.inverseTransform(symmetry), n);
+        if (root.stoneAt(mv % n, mv / n) != 0) return null;
+        for (SearchWorker w : workers) w.reset();
+        workers[0].completedDepth = e.depth;
+        lastScore = e.score;
+        return new int[]{mv / n, mv % n};
+    }
+
+    private static long cacheKey(long hash, boolean white, int size, boolean selective) {
+        return hash ^ (white ? WHITE_TO_MOVE_KEY : 0) ^ size * SIZE_KEY ^ (selective ? SELECTIVE_KEY : 0);
+    }
+
+    // Root moves after which the opponent no longer has a VCF; null when none is found or the
+    // pass runs out of time
+    private boolean[] refutations(Board root) {
+        int n = root.getSize();
+        int[] moves = new int[n * n];
+        int count = root.fillCandidates(moves);
+        boolean[] allowed = new boolean[n * n];
+        boolean any = false;
+        // one defence solve per candidate may use up to a quarter of the move's budget; an
+        // unfinished pass restricts nothing, as unchecked moves may be refutations too
+        long limit = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : searchStart + (deadline - searchStart) / 4;
+        for (int i = 0; i < count; i++) {
+            if (token.isCancelled() || System.nanoTime() > limit) return null;
+            int mv = moves[i];
+            root.addStoneNoGUI(mv % n, mv / n, !aiIsWhite);
+            if (defence.solveVcf(root, !aiIsWhite, token) == null) {
+                allowed[mv] = true;
+                any = true;
+            }
+            threatNodes += defence.getNodes();
+            root.removeStoneNoGUI(mv % n, mv / n);
         }
-        Collections.sort(moves, (a, b) -> Double.compare(
-            heuristicValue(node, b, max),
-            heuristicValue(node, a, max)
-        ));
-
-        // Initialize best from the first move
-        int[] firstMove = moves.get(0);
-        node.addStoneNoGUI(firstMove[1], firstMove[0], !max);
-        Object[] firstRes = minimaxSearchAB(depth - 1, node, !max, alpha, beta);
-        node.removeStoneNoGUI(firstMove[1], firstMove[0]);
-        double bestScore = (Double) firstRes[0];
-        Object[] best = new Object[]{ bestScore, firstMove[0], firstMove[1] };
-
-        // Update alpha/beta from initial
-        if (max) alpha = Math.max(alpha, bestScore);
-        else     beta  = Math.min(beta, bestScore);
-
-        // Loop remaining moves
-        for (int i = 1; i < moves.size(); i++) {
-            int[] mv = moves.get(i);
-            node.addStoneNoGUI(mv[1], mv[0], !max);
-            Object[] cand = minimaxSearchAB(depth - 1, node, !max, alpha, beta);
-            node.removeStoneNoGUI(mv[1], mv[0]);
-            double score = (Double) cand[0];
-            if (max) {
-                if (score > bestScore) {
-                    bestScore = score;
-                    best[0] = bestScore;
-                    best[1] = mv[0];
-                    best[2] = mv[1];
+        return any ? allowed : null;
+    }
+
+    /**
+     * Enables the VCF/VCT threat solver that runs before the alpha-beta search (on by default).
+     * It plays forced wins directly and restricts the root to moves that stop a forced win
+     * by fours of the opponent.
+     */
+    public void setThreatSearch(boolean enabled) { threatSearch = enabled; }
+
+    /**
+     * Shares search results through a persistent cache, or stops when null. Nodes near the root
+     * are looked up there when the transposition table misses and stored there when searched
+     * deep enough, and a position found with an exact result at least as deep as the requested
+     * search is answered without searching. The cache may be shared by any number of engines.
+     */
+    public void setPositionCache(PositionCache cache) { this.cache = cache; }
+
+    public PositionCache getPositionCache() { return cache; }
+
+    /** Plays the moves of the opening book without searching, or stops when null. */
+    public void setOpeningBook(OpeningBook book) { this.book = book; }
+
+    public OpeningBook getOpeningBook() { return book; }
+
+    /** Also scores broken shapes (XX_XX, _XX_X_) in the evaluation; off by default. Board only. */
+    public void setSplitShapes(boolean enabled) {
+        if (board instanceof Board) ((Board) board).setPatternTable(enabled ? PatternTable.SPLIT : PatternTable.DEFAULT);
+    }
+
+    /**
+     * Winning line found by the threat solver in the last search, as {row, col} moves with
+     * the AI and the opponent alternating; null if the move came from the regular search.
+     */
+    public int[][] getThreatLine() {
+        int[] line = threatLine;
+        if (line == null) return null;
+        int n = board.getSize();
+        int[][] moves = new int[line.length][];
+        for (int i = 0; i < line.length; i++) moves[i] = new int[]{line[i] / n, line[i] % n};
+        return moves;
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Starts thinking on the opponent's time. Call right after the AI's move has been played on
+     * the board: the engine predicts the opponent's reply from the hash table, plays it on a copy
+     * and searches the AI's answer in the background without a deadline. The next
+     * calculateNextMove continues that search if the opponent played the predicted move
+     * (ponder hit) and otherwise stops it, keeping the hash and history tables it filled.
+     *
+     * @return the predicted reply as {row, col}, or null if there is nothing to ponder on
+     */
+    @Override
+    public int[] startPondering(int plyDepth) {
+        stopPondering();
+        int n = board.getSize();
+        TranspositionTable.Entry e = new TranspositionTable.Entry();
+        if (!tt.probe(board.getHash() ^ (aiIsWhite ? 0 : WHITE_TO_MOVE_KEY), e)) return null;
+        int reply = e.move;
+        if (reply < 0 || reply >= n * n || board.stoneAt(reply % n, reply / n) != 0) return null;
+        Position root = board.copy();
+        // the opponent plays Black when the AI is White
+        root.addStoneNoGUI(reply % n, reply / n, aiIsWhite);
+        if (root.hasFiveThrough(reply % n, reply / n, !aiIsWhite)) return null;
+
+        int depth = plyDepth + (difficulty == 1 ? 1 : difficulty == 2 ? 2 : 0);
+        ponderHash = root.getHash();
+        ponderStones = root.getStoneCount();
+        ponderToken = new CancellationToken();
+        token = ponderToken;
+        deadline = Long.MAX_VALUE;
+        searchStart = lastReport = System.nanoTime();
+        tt.newSearch();
+        if (ponderPool == null) ponderPool = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "minimax-ponder");
+            t.setDaemon(true);
+            return t;
+        });
+        ponder = ponderPool.submit(() -> search(root, depth));
+        return new int[]{reply / n, reply % n};
+    }
+
+    /** Stops a running ponder search, if any, and waits for it to unwind. */
+    @Override
+    public void stopPondering() {
+        Future<int[]> pondering = ponder;
+        ponder = null;
+        if (pondering == null) return;
+        ponderToken.cancel();
+        await(pondering);
+    }
+
+    @Override
+    public void close() {
+        stopPondering();
+        if (pool != null) pool.shutdown();
+        if (ponderPool != null) ponderPool.shutdown();
+    }
+
+    /** Number of moves answered by continuing a ponder search. */
+    public int getPonderHits() { return ponderHits; }
+
+    /**
+     * Progress is reported after every completed iteration, with the move of the deepest
+     * completed one, and about every 100 ms in between.
+     */
+    @Override
+    public void setProgressListener(ProgressListener listener) { this.listener = listener; }
+
+    private void reportProgress(int depth, int[] bestMove) {
+        ProgressListener l = listener;
+        if (l == null) return;
+        long now = System.nanoTime();
+        lastReport = now;
+        long nodes = getNodeCount();
+        l.progress(depth, bestMove, nodes, nodes * 1_000_000_000L / Math.max(1, now - searchStart));
+    }
+
+    /**
+     * Number of search threads. 1 (the default) searches on the calling thread only; with more,
+     * helper threads from a daemon pool owned by this instance join every search.
+     */
+    @Override
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one search thread");
+        if (threads == workers.length) return;
+        if (pool != null) pool.shutdownNow();
+        pool = threads > 1 ? Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread t = new Thread(r, "minimax-helper");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        workers = new SearchWorker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new SearchWorker(i, board.getSize());
+    }
+
+    @Override
+    public int getThreads() { return workers.length; }
+
+    /**
+     * Points the engine at another board, keeping its hash table and settings, so batch tools
+     * can reuse one engine for many games. A running ponder search is stopped.
+     */
+    void setBoard(Position board) {
+        stopPondering();
+        boolean resized = board.getSize() != this.board.getSize();
+        this.board = board;
+        if (resized) for (int i = 0; i < workers.length; i++) workers[i] = new SearchWorker(i, board.getSize());
+    }
+
+    /**
+     * Neighbourhood radius of the candidate moves searched: 1 considers the cells adjacent
+     * to a stone, 2 also the cells two steps away.
+     */
+    public void setCandidateRadius(int radius) {
+        if (radius < 1 || radius > 2) throw new IllegalArgumentException("Candidate radius must be 1 or 2");
+        candidateRadius = radius;
+    }
+
+    /**
+     * Selective search, on by default for Impossible. Each node only searches the best moves
+     * by ordering up to the beam width of its ply (see setBeamWidths), plus every move that
+     * makes or stops an open three or better. Quiet moves after the first few are searched
+     * one or two plies shallower and searched again at full depth if they beat alpha, and
+     * the block of a four is searched one ply deeper, so a four and its forced answer do not
+     * use up depth.
+     */
+    public void setSelectiveSearch(boolean enabled) { selective = enabled; }
+
+    public boolean isSelectiveSearch() { return selective; }
+
+    /**
+     * Beam widths of the selective search by ply from the root; the last width applies to all
+     * deeper plies. The default is 20, 14, 10, 8.
+     */
+    public void setBeamWidths(int... widths) {
+        if (widths.length == 0) throw new IllegalArgumentException("Need at least one beam width");
+        for (int w : widths) if (w < 1) throw new IllegalArgumentException("Beam widths must be positive");
+        beamWidths = widths.clone();
+    }
+
+    /** Depth of the last fully completed iteration of calculateNextMove. */
+    public int getCompletedDepth() { return workers[0].completedDepth; }
+
+    /** Nodes visited by all workers in the last calculateNextMove. */
+    @Override
+    public long getNodeCount() {
+        long total = 0;
+        for (SearchWorker w : workers) total += w.nodes;
+        return total;
+    }
+
+    /**
+     * One search thread: its own board copy, move ordering tables, buffers and counters.
+     * Workers only share the transposition table and the stop flag and deadline.
+     */
+    private final class SearchWorker {
+        final int id;
+        private final MoveOrdering ordering;
+        private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+        private Position node;
+        // per-ply move and ordering buffers, sized in prepare
+        private int[][] moveBuffers = new int[0][];
+        private long[][] orderBuffers = new long[0][];
+        private int[] pvSeed = new int[0];
+        private boolean canAbort, aborted;
+        long nodes, evaluations, cutoffs, firstMoveCutoffs, ttProbes, ttHits;
+        int completedDepth, currentDepth, completedScore;
+        private int[] bestSoFar;
+        // best root move of the running iteration, packed
+        private int rootMove;
+        // selective search settings, fixed for a whole search in prepare
+        private boolean sel;
+        private int[] beam;
+        private PositionCache cached;
+        // side to move at the root, and the number of root lines scored exactly (multi-PV)
+        private boolean rootWhite;
+        private int pvCount = 1;
+        // multi-PV lines of the running iteration and of the last completed one, best first
+        private int lineCount, completedLineCount;
+        private int[] lineMoves = new int[1], lineScores = new int[1];
+        private int[] completedMoves = new int[1], completedScores = new int[1];
+
+        SearchWorker(int id, int boardSize) {
+            this.id = id;
+            this.ordering = new MoveOrdering(boardSize);
+        }
+
+        void reset() {
+            nodes = evaluations = cutoffs = firstMoveCutoffs = ttProbes = ttHits = 0;
+            completedDepth = currentDepth = completedScore = 0;
+            bestSoFar = null;
+        }
+
+        void prepare(Position root, int depth, boolean white, int lines) {
+            reset();
+            rootWhite = white;
+            pvCount = lines;
+            lineCount = completedLineCount = 0;
+            if (lineMoves.length < lines) {
+                lineMoves = new int[lines];
+                lineScores = new int[lines];
+                completedMoves = new int[lines];
+                completedScores = new int[lines];
+            }
+            node = root.copy();
+            ordering.newSearch();
+            // every stone placed during the search adds at most a full neighbourhood of candidates
+            sel = selective;
+            beam = beamWidths;
+            cached = cache;
+            // threat extensions can take a path MAX_EXTENSIONS plies past the nominal depth
+            int plies = depth + 1 + (sel ? MAX_EXTENSIONS : 0);
+            int r = root.getCandidateRadius(), n = root.getSize();
+            int cells = (int) Math.min(n * n, (long) (root.getStoneCount() + plies) * ((2 * r + 1) * (2 * r + 1) - 1));
+            if (moveBuffers.length < plies || moveBuffers[0].length < cells) {
+                moveBuffers = new int[plies][cells];
+                orderBuffers = new long[plies][cells];
+            }
+            pvSeed = new int[plies];
+            Arrays.fill(pvSeed, -1);
+        }
+
+        /**
+         * Iterative deepening from startDepth; returns the move of the deepest completed iteration.
+         * From the third iteration on the root is searched with an aspiration window around the
+         * score of two iterations back, because the evaluation favours the side to move and so
+         * differs a lot between odd and even depths. A score outside the window is searched
+         * again with a wider one until it is exact.
+         */
+        int[] iterate(int maxDepth, int startDepth) {
+            int[] move = null;
+            int[] scores = new int[maxDepth + 1];
+            aborted = false;
+            for (int d = startDepth; d <= maxDepth && !stop; d++) {
+                // the main worker always completes depth 1 so it has a move to return
+                canAbort = id > 0 || d > 1;
+                currentDepth = d;
+                int guess = d - 2 >= startDepth ? scores[d - 2] : 0;
+                int delta = ASPIRATION_WINDOW;
+                boolean windowed = d - 2 >= startDepth && Math.abs(guess) < MATE_BOUND;
+                int alpha = windowed ? Math.max(-INFINITY, guess - delta) : -INFINITY;
+                int beta = windowed ? Math.min(INFINITY, guess + delta) : INFINITY;
+                int score;
+                if (pvCount > 1) {
+                    // every line needs an exact score, so there is no aspiration window
+                    rootMove = -1;
+                    score = searchRootLines(d);
+                } else while (true) {
+                    rootMove = -1;
+                    score = negamax(d, 0, node, rootWhite, -1, alpha, beta);
+                    if (aborted || (score > alpha && score < beta)) break;
+                    delta *= 8;
+                    if (score <= alpha) alpha = delta > MATE_BOUND ? -INFINITY : Math.max(-INFINITY, score - delta);
+                    else beta = delta > MATE_BOUND ? INFINITY : Math.min(INFINITY, score + delta);
                 }
-                alpha = Math.max(alpha, score);
-                if (alpha >= beta) break;
-            } else {
-                if (score < bestScore) {
-                    bestScore = score;
-                    best[0] = bestScore;
-                    best[1] = mv[0];
-                    best[2] = mv[1];
+                if (aborted) break;
+                if (rootMove < 0) break;
+                int n = node.getSize();
+                move = new int[]{rootMove / n, rootMove % n};
+                scores[d] = score;
+                completedDepth = d;
+                completedScore = score;
+                if (pvCount == 1) {
+                    // the single line is the main search's move
+                    lineMoves[0] = rootMove;
+                    lineScores[0] = score;
+                    lineCount = 1;
                 }
-                beta = Math.min(beta, score);
-                if (alpha >= beta) break;
+                completedLineCount = lineCount;
+                System.arraycopy(lineMoves, 0, completedMoves, 0, lineCount);
+                System.arraycopy(lineScores, 0, completedScores, 0, lineCount);
+                bestSoFar = move;
+                seedPrincipalVariation(move, d);
+                if (id == 0) reportProgress(d, move);
+                // a forced result will not change with more depth
+                boolean forced = Math.abs(score) >= MATE_BOUND;
+                for (int i = 0; i < lineCount && forced; i++) forced = Math.abs(lineScores[i]) >= MATE_BOUND;
+                if (forced) break;
             }
+            return move;
         }
-        return best;
-    }
 
+        // Records the principal variation of the last iteration to order the next one
+        private void seedPrincipalVariation(int[] rootMove, int depth) {
+            int n = node.getSize();
+            Arrays.fill(pvSeed, -1);
+            int[] pv = principalVariation(node, rootWhite, rootMove[0] * n + rootMove[1], depth);
+            System.arraycopy(pv, 0, pvSeed, 0, Math.min(pv.length, pvSeed.length));
+        }
 
+        /**
+         * Multi-PV root: every move that may belong to the best pvCount gets an exact score. Until
+         * pvCount lines are known moves are searched with the full window; after that with a null
+         * window on the score of the worst line, and again with the full window above it when
+         * they beat it. Returns the score of the best line.
+         */
+        private int searchRootLines(int depth) {
+            boolean white = rootWhite;
+            int n = node.getSize();
+            int[] moves = moveBuffers[0];
+            long[] keys = orderBuffers[0];
+            int count = node.fillCandidates(moves);
+            lineCount = 0;
+            if (count == 0) return 0;
+            long key = node.getHash() ^ (white ? WHITE_TO_MOVE_KEY : 0);
+            int hashMove = -1;
+            if (tt.probe(key, entry)) {
+                hashMove = entry.move;
+                if (hashMove >= 0 && (hashMove >= n * n || node.stoneAt(hashMove % n, hashMove / n) != 0)) hashMove = -1;
+            }
+            ordering.score(node, moves, keys, count, white, 0, hashMove >= 0 ? hashMove : pvSeed[0]);
+            for (int i = 0; i < count; i++) {
+                int mv = MoveOrdering.pick(moves, keys, i, count);
+                int x = mv % n, y = mv / n;
+                boolean full = lineCount < pvCount;
+                int floor = full ? -INFINITY : lineScores[pvCount - 1];
+                node.addStoneNoGUI(x, y, !white);
+                int score = -negamax(depth - 1, 1, node, !white, mv, full ? -INFINITY : -floor - 1, -floor);
+                if (!full && score > floor && !aborted)
+                    score = -negamax(depth - 1, 1, node, !white, mv, -INFINITY, -floor);
+                node.removeStoneNoGUI(x, y);
+                if (aborted) return 0;
+                if (full || score > floor) insertLine(mv, score);
+            }
+            rootMove = lineMoves[0];
+            tt.store(key, depth, toTable(lineScores[0], 0), TranspositionTable.EXACT, lineMoves[0]);
+            return lineScores[0];
+        }
 
-    private Object[] searchWinningMove(Board b) {
-        boolean aiPlaysBlack = !aiIsWhite;
-        for (int[] mv : b.generateMoves()) {
-            evaluationCount++;
-            Board tmp = new Board(b);
-            tmp.addStoneNoGUI(mv[1], mv[0], aiPlaysBlack);
-            if (hasFiveInARow(tmp, !aiPlaysBlack))
-                return new Object[]{null, mv[0], mv[1]};
+        // Adds a line in score order, dropping the worst when all pvCount are taken
+        private void insertLine(int mv, int score) {
+            int i = Math.min(lineCount, pvCount - 1);
+            for (; i > 0 && lineScores[i - 1] < score; i--) {
+                lineMoves[i] = lineMoves[i - 1];
+                lineScores[i] = lineScores[i - 1];
+            }
+            lineMoves[i] = mv;
+            lineScores[i] = score;
+            if (lineCount < pvCount) lineCount++;
         }
-        return null;
-    }
 
-    private static boolean hasFiveInARow(Board board, boolean forWhite) {
-        int[][] m = board.getBoardMatrix();
-        int target = forWhite ? 1 : 2;
-        int N = m.length;
-        // horizontal/vertical
-        for (int i=0;i<N;i++) for (int j=0;j<N;j++) {
-            if (j<=N-5) {boolean ok=true; for(int k=0;k<5;k++) if(m[i][j+k]!=target){ok=false;break;} if(ok)return true;}
-            if (i<=N-5) {boolean ok=true; for(int k=0;k<5;k++) if(m[i+k][j]!=target){ok=false;break;} if(ok)return true;}
+        // Cancellation aborts any iteration; stop and the deadline spare the main worker's depth 1
+        private void checkpoint() {
+            if (token.isCancelled()) aborted = true;
+            else if (canAbort && (stop || System.nanoTime() > deadline)) aborted = true;
+            if (id == 0 && !aborted && System.nanoTime() - lastReport > REPORT_INTERVAL_NANOS)
+                reportProgress(currentDepth, bestSoFar);
         }
-        // diagonals
-        for (int i=0;i<=N-5;i++) for (int j=0;j<=N-5;j++) {
-            boolean ok1=true,ok2=true;
-            for(int k=0;k<5;k++){
-                if(m[i+k][j+k]!=target)ok1=false;
-                if(m[i+4-k][j+k]!=target)ok2=false;
+
+        /**
+         * Fail-soft negamax with principal variation search: the first move is searched with the
+         * full window, the others with a null window around alpha and only searched again with
+         * the full window when they beat it. In selective search the beam, late-move reductions
+         * and threat extensions of setSelectiveSearch apply as well.
+         *
+         * @param white     side to move
+         * @param lastMove  move that led to this node, packed as row * size + col, or -1 at the root
+         * @return score from the point of view of the side to move
+         */
+        private int negamax(int depth, int ply, Position node, boolean white, int lastMove, int alpha, int beta) {
+            // Stop check every 1024 nodes; an aborted iteration is thrown away by the caller
+            if ((++nodes & 1023) == 0) checkpoint();
+            if (aborted) return 0;
+            // Terminal: a win can only have been made by the last move, so only its four lines are checked
+            int n = node.getSize();
+            if (lastMove >= 0 && node.hasFiveThrough(lastMove % n, lastMove / n, !white)) return -(MATE - ply);
+            if (ply > 0) {
+                // mate distance pruning: nothing here beats a shorter win already found
+                alpha = Math.max(alpha, -(MATE - ply));
+                beta = Math.min(beta, MATE - ply - 1);
+                if (alpha >= beta) return alpha;
+            }
+            // Depth cutoff
+            if (depth == 0) {
+                evaluations++;
+                return evaluate(node, white);
             }
-            if(ok1||ok2) return true;
+            // Transposition table: cut off on a deep enough bound, otherwise remember the hash move
+            long key = node.getHash() ^ (white ? WHITE_TO_MOVE_KEY : 0);
+            int alphaOrig = alpha;
+            int hashMove = -1;
+            ttProbes++;
+            boolean useCache = cached != null && ply <= CACHE_PLIES && depth >= CACHE_MIN_DEPTH;
+            int symmetry = useCache ? node.getCanonicalTransform() : 0;
+            long cacheKey = useCache ? cacheKey(node.getSymmetricHash(symmetry), white, n, sel) : 0;
+            // the cache backs the table near the root, where its deep earlier results pay off
+            boolean hit = tt.probe(key, entry);
+            if (!hit && useCache && cached.probe(cacheKey, entry)) {
+                hit = true;
+                if (entry.move >= 0 && entry.move < n * n)
+                    entry.move = Position.transformMove(entry.move, Position.inverseTransform(symmetry), n);
+            }
+            if (hit) {
+                ttHits++;
+                hashMove = entry.move;
+                if (hashMove >= 0 && (hashMove >= n * n || node.stoneAt(hashMove % n, hashMove / n) != 0))
+                    hashMove = -1;
+                // never cut at the root, its move must come from this search
+                if (hashMove >= 0 && ply > 0 && entry.depth >= depth) {
+                    int stored = fromTable(entry.score, ply);
+                    if (entry.bound == TranspositionTable.EXACT
+                            || (entry.bound == TranspositionTable.LOWER && stored >= beta)
+                            || (entry.bound == TranspositionTable.UPPER && stored <= alpha)) return stored;
+                }
+            }
+            // Generate and order moves; buffers are per ply so nothing is allocated per node.
+            // The stored best move goes first, else the previous iteration's PV move at this ply.
+            int[] moves = moveBuffers[ply];
+            long[] keys = orderBuffers[ply];
+            int count = node.fillCandidates(moves);
+            boolean[] allowed = rootAllowed;
+            if (ply == 0 && allowed != null) {
+                int kept = 0;
+                for (int i = 0; i < count; i++) if (allowed[moves[i]]) moves[kept++] = moves[i];
+                count = kept;
+            }
+            // a full board is a draw
+            if (count == 0) return 0;
+            int preferred = hashMove >= 0 ? hashMove : ply < pvSeed.length ? pvSeed[ply] : -1;
+            ordering.score(node, moves, keys, count, white, ply, preferred);
+
+            // selective search only looks at the best few moves by ordering, but never skips a threat
+            int width = sel ? beam[Math.min(ply, beam.length - 1)] : count;
+            int bestScore = -INFINITY, bestMove = -1;
+            for (int i = 0; i < count; i++) {
+                int mv = MoveOrdering.pick(moves, keys, i, count);
+                long moveKey = keys[i];
+                // moves come in key order, so past a non-threat there are only non-threats
+                if (i >= width && !MoveOrdering.isThreat(moveKey)) break;
+                int x = mv % n, y = mv / n;
+                // threat extension: the forced block of a four (its local score includes the
+                // opponent's five) is searched one ply deeper, so every four and its answer
+                // cost the path no depth
+                int newDepth = depth - 1;
+                if (sel && MoveOrdering.isThreat(moveKey) && ply + depth < currentDepth + MAX_EXTENSIONS
+                        && node.localScore(x, y, white) >= WIN_SCORE) newDepth++;
+                node.addStoneNoGUI(x, y, !white);
+                int score;
+                if (i == 0) {
+                    score = -negamax(newDepth, ply + 1, node, !white, mv, -beta, -alpha);
+                } else {
+                    // late-move reduction of quiet moves, searched again unreduced if they beat alpha
+                    int reduction = sel && i >= LMR_FULL_MOVES && depth >= 3 && MoveOrdering.isQuiet(moveKey)
+                            ? (i >= 2 * LMR_FULL_MOVES + 2 && depth >= 5 ? 2 : 1) : 0;
+                    score = -negamax(newDepth - reduction, ply + 1, node, !white, mv, -alpha - 1, -alpha);
+                    if (reduction > 0 && score > alpha && !aborted)
+                        score = -negamax(newDepth, ply + 1, node, !white, mv, -alpha - 1, -alpha);
+                    if (score > alpha && score < beta && !aborted)
+                        score = -negamax(newDepth, ply + 1, node, !white, mv, -beta, -alpha);
+                }
+                node.removeStoneNoGUI(x, y);
+                if (aborted) return bestScore;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = mv;
+                    if (ply == 0) rootMove = mv;
+                    if (score > alpha) alpha = score;
+                    if (alpha >= beta) {
+                        cutoffs++;
+                        if (i == 0) firstMoveCutoffs++;
+                        ordering.recordCutoff(mv, white, ply, depth);
+                        break;
+                    }
+                }
+            }
+
+            int bound = bestScore <= alphaOrig ? TranspositionTable.UPPER
+                      : bestScore >= beta ? TranspositionTable.LOWER
+                      : TranspositionTable.EXACT;
+            tt.store(key, depth, toTable(bestScore, ply), bound, bestMove);
+            if (useCache) cached.store(cacheKey, depth, toTable(bestScore, ply), bound,
+                    bestMove < 0 ? -1 : Position.transformMove(bestMove, symmetry, n));
+            return bestScore;
         }
-        return false;
     }
 
-    private static double heuristicValue(Board b, int[] mv, boolean forWhite) {
-        Board tmp = new Board(b);
-        tmp.addStoneNoGUI(mv[1], mv[0], !forWhite);
-        return evaluateBoardForWhite(tmp, !forWhite);
+    // Mate scores are stored relative to the node so they stay valid wherever the position recurs
+    private static int toTable(int score, int ply) {
+        return score >= MATE_BOUND ? score + ply : score <= -MATE_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        return score >= MATE_BOUND ? score - ply : score <= -MATE_BOUND ? score + ply : score;
+    }
+
+    // Plays each candidate in place and checks only the lines through it; no board copies.
+    // Returns the winning move as {row, col} or null.
+    private int[] searchWinningMove(Position b) {
+        boolean aiPlaysBlack = !aiIsWhite;
+        int n = b.getSize();
+        int[] moves = new int[Math.max(1, b.getCandidateCount())];
+        int count = b.fillCandidates(moves);
+        for (int i = 0; i < count; i++) {
+            int x = moves[i] % n, y = moves[i] / n;
+            b.addStoneNoGUI(x, y, aiPlaysBlack);
+            boolean wins = b.hasFiveThrough(x, y, aiIsWhite);
+            b.removeStoneNoGUI(x, y);
+            if (wins) return new int[]{y, x};
+        }
+        return null;
     }
 
+    // Full-board check; the search only tests the lines through the last move
+    static boolean hasFiveInARow(Board board, boolean forWhite) {
+        return board.hasFive(forWhite);
+    }
     
+	// The matrix scans below are the original cell-by-cell evaluators. getScore no longer uses
+	// them, but they are kept as the reference implementation for the line bitboard evaluation.
+
 	// This function calculates the score by evaluating the stone positions in horizontal direction
 	public static int evaluateHorizontal(int[][] boardMatrix, boolean forBlack, boolean playersTurn ) {
 
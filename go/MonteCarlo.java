@@ -0,0 +1,447 @@
+package go;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Monte Carlo tree search engine. Every playout walks the tree by UCT, expands the leaf it
+ * reaches and finishes the game with a light rollout; the most visited root move is played.
+ *
+ * Children are the best candidate moves by local pattern score, in that order, and unvisited
+ * children are tried first in that order. When the mover can make five only the winning move is
+ * a child, and when the opponent threatens five only the blocks are. Rollouts make five or stop
+ * five when they can and otherwise play the best of a few random candidates by pattern score.
+ *
+ * All threads grow one shared tree (tree parallelism). A thread walking through a node adds a
+ * virtual loss to it, so the others spread over different lines until the playout is backed up.
+ * Nodes live in preallocated primitive arrays reused by every search, so a search allocates
+ * nothing per playout; when the pool is full the tree stops growing and playouts continue from
+ * its leaves.
+ */
+public class MonteCarlo implements Engine {
+    static final int DEFAULT_POOL_MEGABYTES = 64;
+    // bytes per node: move, child count, children, visits, wins
+    static final int NODE_BYTES = 5 * 4;
+    private static final int MAX_CHILDREN = 24;
+    private static final double EXPLORATION = 0.6;
+    private static final int VIRTUAL_LOSS = 3;
+    // rollout plies before the game counts as a draw
+    private static final int ROLLOUT_LIMIT = 80;
+    // candidates sampled per rollout move
+    private static final int SAMPLES = 12;
+    // playouts per ply of plyDepth when there is no time budget
+    private static final int PLAYOUTS_PER_PLY = 4_000;
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    // children[node]: LEAF, SEEN (a leaf a playout has ended in), EXPANDING, WIN (the move into
+    // the node made five), DRAW (board full) or the index of the first child; the root is node 0,
+    // so child indices are positive. A leaf is expanded the second time a playout reaches it.
+    private static final int LEAF = 0, SEEN = -1, EXPANDING = -2, WIN = -3, DRAW = -4;
+
+    private final Position board;
+    private final boolean aiIsWhite;
+
+    // node pool; children of a node are contiguous, wins count half points (win 2, draw 1)
+    // for the player who made the node's move
+    private final int[] move;
+    private final int[] childCount;
+    private final AtomicIntegerArray children, visits, wins;
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    private Worker[] workers;
+    private ExecutorService pool;
+    private volatile boolean stop;
+    private volatile long deadline;
+    private volatile CancellationToken token = new CancellationToken();
+    private volatile ProgressListener listener;
+    private long searchStart, lastReport;
+
+    public MonteCarlo(Position board, boolean aiIsWhite) {
+        this(board, aiIsWhite, DEFAULT_POOL_MEGABYTES);
+    }
+
+    /**
+     * @param poolMegabytes  memory of the node pool
+     */
+    public MonteCarlo(Position board, boolean aiIsWhite, int poolMegabytes) {
+        this.board = board;
+        this.aiIsWhite = aiIsWhite;
+        int capacity = (int) Math.min(Integer.MAX_VALUE - MAX_CHILDREN,
+                Math.max(MAX_CHILDREN + 1L, (long) poolMegabytes * 1024 * 1024 / NODE_BYTES));
+        move = new int[capacity];
+        childCount = new int[capacity];
+        children = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        wins = new AtomicIntegerArray(capacity);
+        workers = new Worker[]{ new Worker(0) };
+    }
+
+    /** Nodes the pool holds. */
+    int capacity() { return move.length; }
+
+    /** Nodes of the last search's tree. */
+    public int getTreeSize() { return Math.min(nextNode.get(), move.length); }
+
+    /**
+     * Runs playouts until the time budget is used up, or plyDepth * 4000 playouts without a
+     * budget, and returns the most visited root move. The first playout always completes.
+     */
+    @Override
+    public int[] calculateNextMove(int plyDepth, long timeBudgetMillis, CancellationToken token) {
+        board.thinkingStarted();
+        try {
+            long start = System.nanoTime();
+            this.token = token;
+            deadline = timeBudgetMillis > 0 ? start + timeBudgetMillis * 1_000_000L : Long.MAX_VALUE;
+            searchStart = lastReport = start;
+            long quota = timeBudgetMillis > 0 ? Long.MAX_VALUE : Math.max(1, (long) plyDepth * PLAYOUTS_PER_PLY);
+            resetTree();
+            stop = false;
+            for (Worker w : workers) w.prepare(board, Math.max(1, quota / workers.length));
+            List<Future<?>> helpers = new ArrayList<>();
+            for (int i = 1; i < workers.length; i++) {
+                Worker helper = workers[i];
+                helpers.add(pool.submit(() -> helper.run()));
+            }
+            workers[0].run();
+            stop = true;
+            for (Future<?> f : helpers) await(f);
+            if (token.isCancelled()) return null;
+            int best = bestChild();
+            reportProgress(best);
+            int n = board.getSize();
+            return best < 0 ? null : new int[]{move[best] / n, move[best] % n};
+        } finally {
+            board.thinkingFinished();
+        }
+    }
+
+    private void resetTree() {
+        nextNode.set(1);
+        move[0] = -1;
+        childCount[0] = 0;
+        children.set(0, LEAF);
+        visits.set(0, 0);
+        wins.set(0, 0);
+    }
+
+    // Most visited root child, -1 before the root is expanded
+    private int bestChild() {
+        int first = children.get(0);
+        if (first <= 0) return -1;
+        int best = first;
+        for (int c = first + 1; c < first + childCount[0]; c++) if (visits.get(c) > visits.get(best)) best = c;
+        return best;
+    }
+
+    // The root has a single child: a win or the only block of a five
+    private boolean forced() {
+        return childCount[0] == 1 && children.get(0) > 0;
+    }
+
+    private static void await(Future<?> f) {
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Playout worker failed", e.getCause());
+        }
+    }
+
+    /** Playouts of all threads in the last calculateNextMove. */
+    @Override
+    public long getNodeCount() {
+        long total = 0;
+        for (Worker w : workers) total += w.playouts;
+        return total;
+    }
+
+    /** Progress is reported about every 100 ms with the deepest tree path and the most visited move. */
+    @Override
+    public void setProgressListener(ProgressListener listener) { this.listener = listener; }
+
+    private void reportProgress(int best) {
+        ProgressListener l = listener;
+        if (l == null) return;
+        long now = System.nanoTime();
+        lastReport = now;
+        int depth = 0;
+        for (Worker w : workers) depth = Math.max(depth, w.maxDepth);
+        int n = board.getSize();
+        long playouts = getNodeCount();
+        l.progress(depth, best < 0 ? null : new int[]{move[best] / n, move[best] % n},
+                playouts, playouts * 1_000_000_000L / Math.max(1, now - searchStart));
+    }
+
+    /** Threads growing the shared tree; helper threads come from a daemon pool owned by this instance. */
+    @Override
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one search thread");
+        if (threads == workers.length) return;
+        if (pool != null) pool.shutdownNow();
+        pool = threads > 1 ? Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread t = new Thread(r, "mcts-helper");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Worker(i);
+    }
+
+    @Override
+    public int getThreads() { return workers.length; }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /** One playout thread with its own board copy and buffers. */
+    private final class Worker {
+        final int id;
+        private Position node;
+        private int[] path = new int[0], played = new int[0], cells = new int[0];
+        private long[] keys = new long[0];
+        private final int[] order = new int[MAX_CHILDREN];
+        // moves on the board beyond the root, tree and rollout moves together
+        private int stones;
+        private long quota, rng;
+        long playouts;
+        int maxDepth;
+
+        Worker(int id) {
+            this.id = id;
+            this.rng = 0x9E3779B97F4A7C15L * (id + 1);
+        }
+
+        void prepare(Position root, long quota) {
+            node = root.copy();
+            int cellsCount = root.getSize() * root.getSize();
+            if (path.length < cellsCount + 1) {
+                path = new int[cellsCount + 1];
+                played = new int[cellsCount + 1];
+                cells = new int[cellsCount];
+                keys = new long[cellsCount];
+            }
+            this.quota = quota;
+            playouts = 0;
+            maxDepth = 0;
+        }
+
+        void run() {
+            do {
+                playout();
+                playouts++;
+                if ((playouts & 63) == 0 && id == 0 && System.nanoTime() - lastReport > REPORT_INTERVAL_NANOS)
+                    reportProgress(bestChild());
+            } while (!stop && playouts < quota && !token.isCancelled() && System.nanoTime() < deadline && !forced());
+            if (id == 0) stop = true;
+        }
+
+        // Selection, expansion, rollout and backup of one playout; the board is restored after it
+        private void playout() {
+            int n = node.getSize();
+            boolean white = aiIsWhite;
+            int depth = 0, cur = 0;
+            stones = 0;
+            // last move of the side to move and of the opponent, for the rollout's five checks
+            int ownLast = -1, oppLast = -1;
+            path[0] = 0;
+            int result;                 // half points for white
+            boolean expanded = false;
+            while (true) {
+                int state = children.get(cur);
+                if (state == WIN) { result = white ? 0 : 2; break; }
+                if (state == DRAW) { result = 1; break; }
+                // one expansion per playout, then a rollout from the child it leads to
+                if (!expanded && (state == SEEN || (state == LEAF && cur == 0))) {
+                    expanded = true;
+                    if (expand(cur, state, white)) continue;
+                }
+                if (state <= 0) {
+                    if (state == LEAF) children.compareAndSet(cur, LEAF, SEEN);
+                    result = rollout(white, ownLast, oppLast);
+                    break;
+                }
+                int child = select(cur, state);
+                visits.addAndGet(child, VIRTUAL_LOSS);
+                int mv = move[child];
+                node.addStoneNoGUI(mv % n, mv / n, !white);
+                played[stones++] = mv;
+                path[++depth] = child;
+                cur = child;
+                ownLast = oppLast;
+                oppLast = mv;
+                white = !white;
+            }
+            if (depth > maxDepth) maxDepth = depth;
+            // back up: the node at depth d was entered by white when d and aiIsWhite agree in parity
+            visits.incrementAndGet(0);
+            for (int d = 1; d <= depth; d++) {
+                boolean moverWhite = (d % 2 == 1) == aiIsWhite;
+                visits.addAndGet(path[d], 1 - VIRTUAL_LOSS);
+                wins.addAndGet(path[d], moverWhite ? result : 2 - result);
+            }
+            for (int i = stones - 1; i >= 0; i--) node.removeStoneNoGUI(played[i] % n, played[i] / n);
+        }
+
+        // UCT over the children; unvisited children are taken first, in pattern order
+        private int select(int parent, int first) {
+            int count = childCount[parent];
+            double logN = Math.log(Math.max(1, visits.get(parent)));
+            int best = first;
+            double bestValue = -1;
+            for (int c = first; c < first + count; c++) {
+                int v = visits.get(c);
+                if (v == 0) return c;
+                double value = wins.get(c) / (2.0 * v) + EXPLORATION * Math.sqrt(logN / v);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds the children of a leaf for the side to move. Returns false if another thread is
+         * expanding it or the pool is full; the playout then continues with a rollout.
+         */
+        private boolean expand(int leaf, int state, boolean white) {
+            if (nextNode.get() + MAX_CHILDREN > move.length) return false;
+            if (!children.compareAndSet(leaf, state, EXPANDING)) return false;
+            int n = node.getSize();
+            int count = node.fillCandidates(cells);
+            if (count == 0) {
+                children.set(leaf, DRAW);
+                return true;
+            }
+            // a move that makes five is the only child; blocks of the opponent's five are the only ones
+            int kept = 0;
+            boolean winning = false;
+            for (int i = 0; i < count && !winning; i++) {
+                int mv = cells[i];
+                if (node.localScore(mv % n, mv / n, white) < Minimax.getWinScore()) continue;
+                node.addStoneNoGUI(mv % n, mv / n, !white);
+                winning = node.hasFiveThrough(mv % n, mv / n, white);
+                node.removeStoneNoGUI(mv % n, mv / n);
+                if (winning) kept = 0;
+                cells[kept++] = mv;
+            }
+            if (kept == 0) kept = topByPattern(count, white);
+            int base;
+            if ((base = nextNode.getAndAdd(kept)) + kept > move.length) {
+                children.set(leaf, state);
+                return false;
+            }
+            for (int i = 0; i < kept; i++) {
+                int c = base + i;
+                move[c] = cells[i];
+                childCount[c] = 0;
+                visits.set(c, 0);
+                wins.set(c, 0);
+                children.set(c, winning ? WIN : LEAF);
+            }
+            childCount[leaf] = kept;
+            // publishes the children written above
+            children.set(leaf, base);
+            return true;
+        }
+
+        // Moves the best MAX_CHILDREN candidates by local score to the front, best first
+        private int topByPattern(int count, boolean white) {
+            int n = node.getSize();
+            int kept = Math.min(count, MAX_CHILDREN);
+            for (int i = 0; i < count; i++) keys[i] = (long) node.localScore(cells[i] % n, cells[i] / n, white) << 32 | i;
+            for (int i = 0; i < kept; i++) {
+                int best = i;
+                for (int j = i + 1; j < count; j++) if (keys[j] > keys[best]) best = j;
+                long k = keys[best]; keys[best] = keys[i]; keys[i] = k;
+            }
+            for (int i = 0; i < kept; i++) order[i] = cells[(int) keys[i]];
+            System.arraycopy(order, 0, cells, 0, kept);
+            return kept;
+        }
+
+        /**
+         * Plays the game out from the current node with white to move and returns the half
+         * points for white. The moves are recorded after the tree moves and undone by playout.
+         */
+        private int rollout(boolean white, int ownLast, int oppLast) {
+            int n = node.getSize();
+            int result = 1;
+            for (int ply = 0; ply < ROLLOUT_LIMIT; ply++) {
+                int mv = fiveCell(ownLast, white);
+                if (mv < 0) mv = fiveCell(oppLast, !white);
+                if (mv < 0) mv = sampleMove(white);
+                if (mv < 0) break;
+                node.addStoneNoGUI(mv % n, mv / n, !white);
+                played[stones++] = mv;
+                if (node.hasFiveThrough(mv % n, mv / n, white)) {
+                    result = white ? 2 : 0;
+                    break;
+                }
+                ownLast = oppLast;
+                oppLast = mv;
+                white = !white;
+            }
+            return result;
+        }
+
+        // Best of a few random candidates by local score
+        private int sampleMove(boolean white) {
+            int n = node.getSize();
+            int count = node.fillCandidates(cells);
+            if (count == 0) return -1;
+            int best = -1, bestScore = -1;
+            for (int i = 0; i < SAMPLES; i++) {
+                int mv = cells[nextInt(count)];
+                int score = node.localScore(mv % n, mv / n, white);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = mv;
+                }
+            }
+            return best;
+        }
+
+        // An empty cell that gives `white` five on a line through the stone at last, or -1
+        private int fiveCell(int last, boolean white) {
+            if (last < 0) return -1;
+            int n = node.getSize();
+            int colour = white ? Board.WHITE : Board.BLACK;
+            int lx = last % n, ly = last / n;
+            for (int[] d : DIRECTIONS) {
+                for (int k = -4; k <= 4; k++) {
+                    int x = lx + k * d[0], y = ly + k * d[1];
+                    if (x < 0 || y < 0 || x >= n || y >= n || node.stoneAt(x, y) != 0) continue;
+                    if (run(x, y, d[0], d[1], colour) + run(x, y, -d[0], -d[1], colour) >= 4) return y * n + x;
+                }
+            }
+            return -1;
+        }
+
+        private int run(int x, int y, int dx, int dy, int colour) {
+            int n = node.getSize(), count = 0;
+            for (x += dx, y += dy; x >= 0 && y >= 0 && x < n && y < n && node.stoneAt(x, y) == colour; x += dx, y += dy)
+                count++;
+            return count;
+        }
+
+        // xorshift; each worker has its own stream
+        private int nextInt(int bound) {
+            rng ^= rng << 13;
+            rng ^= rng >>> 7;
+            rng ^= rng << 17;
+            return (int) ((rng >>> 33) % bound);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package go;
+
+/**
+ * Move ordering for the alpha-beta search. The hash move goes first, then moves that make
+ * or block an open three or better (by local pattern score), then the killer moves of the
+ * ply, then the remaining moves by local pattern score with the history heuristic breaking
+ * ties. Keys are computed once per node into a primitive array and moves are picked lazily,
+ * so a cutoff early in the list skips the rest of the selection work.
+ */
+class MoveOrdering {
+    static final int THREAT_SCORE = 50_000;
+    static final int MAX_PLY = 128;
+
+    private static final long THREAT_BASE = 1L << 50;
+    private static final long KILLER_BASE = 1L << 45;
+    private static final int HISTORY_CAP = (1 << 16) - 1;
+
+    // two killer slots per ply, packed moves or -1
+    private final int[][] killers = new int[MAX_PLY][2];
+    // [colour][cell] cutoff counts weighted by depth squared, colour 0 = white
+    private final int[][] history;
+
+    MoveOrdering(int boardSize) {
+        history = new int[2][boardSize * boardSize];
+        clearKillers();
+    }
+
+    /** Called at the start of every search: forgets killers and ages the history table. */
+    void newSearch() {
+        clearKillers();
+        for (int[] h : history)
+            for (int i = 0; i < h.length; i++) h[i] >>= 1;
+    }
+
+    private void clearKillers() {
+        for (int[] k : killers) { k[0] = -1; k[1] = -1; }
+    }
+
+    /** Fills keys[0..count) with the ordering key of every move; higher keys are searched first. */
+    void score(Position node, int[] moves, long[] keys, int count, boolean white, int ply, int hashMove) {
+        int n = node.getSize();
+        int[] hist = history[white ? 0 : 1];
+        int k0 = ply < MAX_PLY ? killers[ply][0] : -1, k1 = ply < MAX_PLY ? killers[ply][1] : -1;
+        for (int i = 0; i < count; i++) {
+            int mv = moves[i];
+            long key;
+            if (mv == hashMove) {
+                key = Long.MAX_VALUE;
+            } else {
+                int local = node.localScore(mv % n, mv / n, white);
+                if (local >= THREAT_SCORE) key = THREAT_BASE + local;
+                else if (mv == k0) key = KILLER_BASE + 1;
+                else if (mv == k1) key = KILLER_BASE;
+                else key = ((long) local << 16) + Math.min(hist[mv], HISTORY_CAP);
+            }
+            keys[i] = key;
+        }
+    }
+
+    /** The key belongs to a move that makes or blocks an open three or better, or to the hash move. */
+    static boolean isThreat(long key) { return key >= THREAT_BASE; }
+
+    /** The key belongs to a move that is neither the hash move nor a threat nor a killer. */
+    static boolean isQuiet(long key) { return key < KILLER_BASE; }
+
+    /** Moves the highest-keyed move of [i, count) to position i and returns it. */
+    static int pick(int[] moves, long[] keys, int i, int count) {
+        int best = i;
+        for (int j = i + 1; j < count; j++) if (keys[j] > keys[best]) best = j;
+        int mv = moves[best];
+        long key = keys[best];
+        moves[best] = moves[i]; keys[best] = keys[i];
+        moves[i] = mv; keys[i] = key;
+        return mv;
+    }
+
+    /** Records a move that caused a beta cutoff. */
+    void recordCutoff(int mv, boolean white, int ply, int depth) {
+        int[] hist = history[white ? 0 : 1];
+        hist[mv] = Math.min(hist[mv] + depth * depth, Integer.MAX_VALUE >> 1);
+        if (ply < MAX_PLY && killers[ply][0] != mv) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = mv;
+        }
+    }
+}
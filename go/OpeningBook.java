@@ -0,0 +1,135 @@
+package go;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only opening book: the move to play in known opening positions, looked up by binary
+ * search in a memory-mapped file. Books are made by OpeningBookBuilder.
+ *
+ * Layout: a 16-byte header (magic, format version, entry count) followed by 12-byte entries
+ * sorted by key: the position key (see key), the move packed as row * size + col, and the depth
+ * of the search that chose it. One file may hold several board sizes, the key tells them apart.
+ * Keys are symmetry-canonical and moves are stored in the canonical frame, so one entry serves
+ * all 8 rotations and reflections of a position.
+ */
+public final class OpeningBook implements AutoCloseable {
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 12;
+    private static final long MAGIC = 0x474F4D4F4B55_424BL;   // "GOMOKUBK"
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int count;
+
+    private OpeningBook(FileChannel channel, MappedByteBuffer map, int count) {
+        this.channel = channel;
+        this.map = map;
+        this.count = count;
+    }
+
+    public static OpeningBook open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.capacity() < HEADER_BYTES || map.getLong(0) != MAGIC || map.getInt(8) != VERSION)
+                throw new IOException("Not an opening book of version " + VERSION + ": " + file);
+            int count = map.getInt(12);
+            if (count < 0 || map.capacity() != HEADER_BYTES + (long) count * ENTRY_BYTES)
+                throw new IOException("Truncated opening book: " + file);
+            return new OpeningBook(channel, map, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Key of a position with the given side to move, the same for its symmetric images. It uses
+     * the search's key constants, so the book and the search agree on the side to move.
+     */
+    public static long key(Position board, boolean whiteToMove) {
+        return board.getCanonicalHash() ^ (whiteToMove ? Minimax.WHITE_TO_MOVE_KEY : 0) ^ board.getSize() * Minimax.SIZE_KEY;
+    }
+
+    /** Number of positions in the book. */
+    public int size() { return count; }
+
+    /** The book move as {row, col}, or null if the position is not in the book. */
+    public int[] probe(Position board, boolean whiteToMove) {
+        int at = find(key(board, whiteToMove));
+        if (at < 0) return null;
+        int n = board.getSize();
+        int mv = map.getShort(at + 8) & 0xFFFF;
+        // a colliding key could point anywhere
+        if (mv >= n * n) return null;
+        mv = Position.transformMove(mv, Position.inverseTransform(board.getCanonicalTransform()), n);
+        if (board.stoneAt(mv % n, mv / n) != 0) return null;
+        return new int[]{mv / n, mv % n};
+    }
+
+    /** Depth of the search behind the book move, or -1 if the position is not in the book. */
+    public int depth(Position board, boolean whiteToMove) {
+        int at = find(key(board, whiteToMove));
+        return at < 0 ? -1 : map.get(at + 10) & 0xFF;
+    }
+
+    // Offset of the entry with the key, or -1
+    private int find(long key) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = map.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return HEADER_BYTES + mid * ENTRY_BYTES;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+
+    /**
+     * Writes a book; a key may occur only once. The file is written next to the target and moved
+     * into place, so readers never see half a book.
+     *
+     * @param moves   packed moves in the canonical frame, parallel to keys
+     * @param depths  search depths, parallel to keys
+     */
+    static void write(Path file, long[] keys, int[] moves, int[] depths) throws IOException {
+        int n = keys.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + n * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putLong(MAGIC).putInt(VERSION).putInt(n);
+        for (int i = 0; i < n; i++) {
+            int e = order[i];
+            if (i > 0 && keys[e] == keys[order[i - 1]]) throw new IllegalArgumentException("Duplicate key " + keys[e]);
+            buf.putLong(keys[e]).putShort((short) moves[e]).put((byte) Math.min(depths[e], 0xFF)).put((byte) 0);
+        }
+        buf.flip();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
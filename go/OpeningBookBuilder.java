@@ -0,0 +1,155 @@
+package go;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds an OpeningBook from deep offline searches. Starting from the empty board, every position
+ * gets the move of a Minimax search; the book move and the next best moves by local score are then
+ * played to reach the positions of the next ply, so the book also answers the likely deviations.
+ * Transpositions and symmetric positions are searched once. Plies are built one after the other, the positions of a ply
+ * on a thread pool.
+ *
+ * Usage: java go.OpeningBookBuilder [key=value ...]
+ *   size=15,19       board sizes
+ *   plies=6          positions with up to this many stones are added
+ *   width=3          moves followed from every position
+ *   depth=10         search depth
+ *   time=0           time budget per position in ms, 0 for none
+ *   selective=true   selective search
+ *   tt=32            transposition table megabytes per search
+ *   parallel=N       positions searched at once (default: number of cores)
+ *   out=opening.book
+ */
+public class OpeningBookBuilder {
+    private final int plies, width, depth, ttMegabytes;
+    private final long millis;
+    private final boolean selective;
+    // key -> {packed move, depth}, in insertion order
+    private final Map<Long, int[]> book = new LinkedHashMap<>();
+
+    OpeningBookBuilder(int plies, int width, int depth, long millis, boolean selective, int ttMegabytes) {
+        this.plies = plies;
+        this.width = width;
+        this.depth = depth;
+        this.millis = millis;
+        this.selective = selective;
+        this.ttMegabytes = ttMegabytes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int plies = 6, width = 3, depth = 10, tt = 32, parallel = Runtime.getRuntime().availableProcessors();
+        long millis = 0;
+        boolean selective = true;
+        int[] sizes = {15, 19};
+        Path out = Paths.get("opening.book");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "size": sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "plies": plies = Integer.parseInt(value); break;
+                case "width": width = Integer.parseInt(value); break;
+                case "depth": depth = Integer.parseInt(value); break;
+                case "time": millis = Long.parseLong(value); break;
+                case "selective": selective = Boolean.parseBoolean(value); break;
+                case "tt": tt = Integer.parseInt(value); break;
+                case "parallel": parallel = Integer.parseInt(value); break;
+                case "out": out = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+        for (int size : sizes)
+            if (size < 5 || size > 64) throw new IllegalArgumentException("Book sizes must be 5..64, got " + size);
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, width, depth, millis, selective, tt);
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        long start = System.nanoTime();
+        try {
+            for (int size : sizes) builder.build(size, pool);
+        } finally {
+            pool.shutdown();
+        }
+        builder.write(out);
+        System.out.printf("%d positions in %.1f s written to %s%n",
+                builder.book.size(), (System.nanoTime() - start) / 1e9, out);
+    }
+
+    /** Adds the positions of one board size. */
+    void build(int size, ExecutorService pool) throws Exception {
+        List<Board> level = List.of(new Board(size));
+        for (int ply = 0; ply <= plies && !level.isEmpty(); ply++) {
+            boolean white = ply % 2 == 1;
+            List<Future<int[]>> moves = new ArrayList<>();
+            for (Board b : level) moves.add(pool.submit(() -> search(b, white)));
+            List<Board> next = new ArrayList<>();
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < level.size(); i++) {
+                Board b = level.get(i);
+                int[] mv = moves.get(i).get();
+                if (mv == null) continue;
+                int n = b.getSize(), packed = mv[0] * n + mv[1];
+                int canonical = Position.transformMove(packed, b.getCanonicalTransform(), n);
+                book.put(OpeningBook.key(b, white), new int[]{canonical, depth});
+                if (ply == plies) continue;
+                for (int child : followed(b, white, packed)) {
+                    Board c = b.copy();
+                    c.addStoneNoGUI(child % n, child / n, !white);
+                    // positions reached by another order, or mirror images, are searched once
+                    long key = OpeningBook.key(c, !white);
+                    if (!c.checkWinLast() && !book.containsKey(key) && seen.add(key)) next.add(c);
+                }
+            }
+            System.out.printf("%dx%d ply %d: %d positions, book %d%n", size, size, ply, level.size(), book.size());
+            level = next;
+        }
+    }
+
+    private int[] search(Board b, boolean white) {
+        Minimax m = new Minimax(b, white, 0, ttMegabytes);
+        m.setSelectiveSearch(selective);
+        return m.calculateNextMove(depth, millis);
+    }
+
+    // The book move followed by the best other candidates by local score
+    private int[] followed(Board b, boolean white, int bookMove) {
+        int n = b.getSize();
+        int[] cells = new int[n * n];
+        int count = b.fillCandidates(cells);
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++)
+            keyed[i] = (long) -b.localScore(cells[i] % n, cells[i] / n, white) << 32 | cells[i];
+        Arrays.sort(keyed);
+        int[] out = new int[Math.min(width, count)];
+        int k = 0;
+        out[k++] = bookMove;
+        for (int i = 0; i < count && k < out.length; i++) {
+            int mv = (int) keyed[i];
+            if (mv != bookMove) out[k++] = mv;
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    void write(Path out) throws java.io.IOException {
+        int n = book.size();
+        long[] keys = new long[n];
+        int[] moves = new int[n], depths = new int[n];
+        int i = 0;
+        for (Map.Entry<Long, int[]> e : book.entrySet()) {
+            keys[i] = e.getKey();
+            moves[i] = e.getValue()[0];
+            depths[i++] = e.getValue()[1];
+        }
+        OpeningBook.write(out, keys, moves, depths);
+    }
+}
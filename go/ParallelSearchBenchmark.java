@@ -0,0 +1,96 @@
+package go;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the Lazy SMP speedup of Minimax: time to finish a fixed-depth search over a set of
+ * mid-game positions with 1, 2, 4 and 8 threads. Then measures the tree-parallel MonteCarlo
+ * engine the other way round: playouts done in the same time budget with as many threads.
+ *
+ * Usage: java go.ParallelSearchBenchmark [depth] [positions] [boardSize]
+ */
+public class ParallelSearchBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        List<Board> boards = new ArrayList<>();
+        for (int i = 0; i < positions; i++) boards.add(randomPosition(size, 10 + 2 * i, 1000 + i));
+
+        // warm up the JIT so the one-thread baseline is not penalised
+        for (Board b : boards) new Minimax(b, true, 0).calculateNextMove(Math.min(depth, 4));
+
+        System.out.printf("depth %d, %d positions, %dx%d, %d cores%n",
+                depth, positions, size, size, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %12s %14s %12s %8s%n", "threads", "time ms", "nodes", "knps", "speedup");
+        double baseline = 0;
+        for (int threads : THREADS) {
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (Board b : boards) {
+                Minimax ai = new Minimax(b, b.getStoneCount() % 2 == 1, 0);
+                ai.setThreads(threads);
+                ai.calculateNextMove(depth);
+                nodes += ai.getNodeCount();
+                ai.close();
+            }
+            double ms = (System.nanoTime() - start) / 1e6;
+            if (threads == 1) baseline = ms;
+            System.out.printf("%8d %12.1f %14d %12.1f %8.2f%n", threads, ms, nodes, nodes / ms, baseline / ms);
+        }
+
+        long budget = 500;
+        for (Board b : boards) new MonteCarlo(b, true, 16).calculateNextMove(depth, budget);
+        System.out.printf("%nMCTS, %d ms per position%n", budget);
+        System.out.printf("%8s %14s %14s %8s%n", "threads", "playouts", "playouts/s", "speedup");
+        double single = 0;
+        for (int threads : THREADS) {
+            long playouts = 0;
+            long start = System.nanoTime();
+            for (Board b : boards) {
+                MonteCarlo ai = new MonteCarlo(b, b.getStoneCount() % 2 == 1, 16);
+                ai.setThreads(threads);
+                ai.calculateNextMove(depth, budget);
+                playouts += ai.getNodeCount();
+                ai.close();
+            }
+            double perSecond = playouts / ((System.nanoTime() - start) / 1e9);
+            if (threads == 1) single = perSecond;
+            System.out.printf("%8d %14d %14.0f %8.2f%n", threads, playouts, perSecond, perSecond / single);
+        }
+    }
+
+    /** A position of the given number of stones played at random next to earlier stones. */
+    static Board randomPosition(int size, int stones, long seed) {
+        Random rnd = new Random(seed);
+        Board b = new Board(size);
+        b.addStone(size / 2, size / 2, false);
+        int[] moves = new int[size * size];
+        for (int i = 1; i < stones; i++) {
+            int count = b.fillCandidates(moves);
+            int mv = moves[rnd.nextInt(count)];
+            b.addStone(mv % size, mv / size, i % 2 == 1);
+            if (b.checkWinLast()) b.removeStoneNoGUI(mv % size, mv / size);
+        }
+        return b;
+    }
+
+    /**
+     * Like randomPosition, but without a forced win for either side, so a search has to run the
+     * full-width alpha-beta instead of playing a threat-solver line. Seeds are tried from seed on
+     * in steps of 1000; the solver is only node-limited, so the choice does not depend on timing.
+     */
+    static Board quietPosition(int size, int stones, long seed) {
+        ThreatSolver solver = new ThreatSolver(20_000, 3_600_000, 20, 4);
+        CancellationToken token = new CancellationToken();
+        for (long s = seed; ; s += 1000) {
+            Board b = randomPosition(size, stones, s);
+            boolean white = b.getStoneCount() % 2 == 1;
+            if (solver.solveVct(b, white, token) == null && solver.solveVcf(b, !white, token) == null) return b;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package go;
+
+/**
+ * Table-driven line evaluator.
+ *
+ * A line is read four cells at a time: the own and empty bits of a chunk form an 8-bit
+ * pattern (cells that are neither are blocked, as are cells past the end of the line). A small
+ * state machine walks the chunks; the state remembers the run of own stones being read and
+ * whether its left side is open, and for split shapes also the run that ended one empty cell
+ * earlier. Transitions and their scores for both turn flags are precomputed per (state, chunk)
+ * when the class loads, so scoring a line is one table lookup per chunk.
+ *
+ * DEFAULT scores every maximal run of own stones with Minimax.getConsecutiveSetScore, a side
+ * counting as blocked unless its neighbour is an empty cell of the line.
+ * SPLIT adds broken shapes on top: runs joined across one empty cell that make four stones
+ * (XX_XX, XXX_X) score as a closed four, and open broken threes (_XX_X_, _X_XX_) as an open three.
+ */
+final class PatternTable {
+    static final PatternTable DEFAULT = new PatternTable(false);
+    static final PatternTable SPLIT = new PatternTable(true);
+
+    // state = ((count * 2 + open) * 5 + prev) * 2 + prevOpen; count is capped at 6, prev at 4.
+    // While no run is open (count 0), open tells whether the last cell was empty.
+    private static final int STATES = 7 * 2 * 5 * 2;
+    private static final int OWN = 0, EMPTY = 1, BLOCKED = 2;
+
+    private final boolean split;
+    private final int[] next = new int[STATES * 256];
+    // [currentTurn ? 1 : 0][state * 256 + chunk]
+    private final int[][] gain = new int[2][STATES * 256];
+    // score of closing the open run at the end of the line
+    private final int[][] flush = new int[2][STATES];
+
+    private PatternTable(boolean split) {
+        this.split = split;
+        int[] g = new int[2];
+        for (int s = 0; s < STATES; s++) {
+            for (int chunk = 0; chunk < 256; chunk++) {
+                int own = chunk & 15, empty = chunk >>> 4;
+                if ((own & empty) != 0) continue;
+                int state = s, g0 = 0, g1 = 0;
+                for (int i = 0; i < 4; i++) {
+                    int cell = (own >>> i & 1) != 0 ? OWN : (empty >>> i & 1) != 0 ? EMPTY : BLOCKED;
+                    state = step(state, cell, g);
+                    g0 += g[0];
+                    g1 += g[1];
+                }
+                next[s * 256 + chunk] = state;
+                gain[0][s * 256 + chunk] = g0;
+                gain[1][s * 256 + chunk] = g1;
+            }
+            step(s, BLOCKED, g);
+            flush[0][s] = g[0];
+            flush[1][s] = g[1];
+        }
+    }
+
+    /**
+     * Scores one packed line for the side owning `own`.
+     * @param valid  cells that belong to the line
+     */
+    int score(long own, long opp, long valid, boolean currentTurn) {
+        long empty = valid & ~(own | opp);
+        own &= valid;
+        int length = 64 - Long.numberOfLeadingZeros(valid);
+        int turn = currentTurn ? 1 : 0;
+        int[] g = gain[turn];
+        int state = 0, score = 0;
+        for (int i = 0; i < length; i += 4) {
+            int t = state << 8 | (int) (own >>> i & 15) | (int) (empty >>> i & 15) << 4;
+            score += g[t];
+            state = next[t];
+        }
+        return score + flush[turn][state];
+    }
+
+    // Advances the state by one cell and writes the score of the shapes it completes to g
+    private int step(int state, int cell, int[] g) {
+        int prevOpen = state & 1, prev = (state >> 1) % 5;
+        int open = (state / 10) & 1, count = state / 20;
+        g[0] = g[1] = 0;
+        if (cell == OWN) {
+            if (count == 0) return encode(1, open, open == 1 ? prev : 0, prevOpen);
+            return encode(Math.min(count + 1, 6), open, prev, prevOpen);
+        }
+        boolean rightOpen = cell == EMPTY;
+        if (count > 0) {
+            int blocks = 2 - open - (rightOpen ? 1 : 0);
+            for (int t = 0; t < 2; t++) {
+                g[t] = Minimax.getConsecutiveSetScore(count, blocks, t == 1);
+                if (split && prev > 0 && count < 5) g[t] += splitScore(prev + count, prevOpen == 1 && rightOpen, t == 1);
+            }
+        }
+        // a run followed by one empty cell can join the next run
+        if (split && rightOpen && count > 0 && count < 5) return encode(0, 1, count, open);
+        return encode(0, rightOpen ? 1 : 0, 0, 0);
+    }
+
+    private static int splitScore(int stones, boolean open, boolean currentTurn) {
+        if (stones >= 4) return Minimax.getConsecutiveSetScore(4, 1, currentTurn);
+        if (stones == 3 && open) return Minimax.getConsecutiveSetScore(3, 0, currentTurn);
+        return 0;
+    }
+
+    private static int encode(int count, int open, int prev, int prevOpen) {
+        return ((count * 2 + open) * 5 + prev) * 2 + prevOpen;
+    }
+}
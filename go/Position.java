@@ -0,0 +1,82 @@
+package go;
+
+/**
+ * What the search needs from a board. Board keeps dense line bitboards and works up to 64 x 64;
+ * SparseBoard stores only the occupied cells and their neighbourhood, so its cost follows the
+ * number of stones instead of the board area.
+ *
+ * Cells are addressed as (x = column, y = row) and moves are packed as row * size + col.
+ *
+ * The 8 symmetries of the square are numbered 0-7: bit 2 swaps x and y, then bit 0 mirrors x
+ * and bit 1 mirrors y. Symmetry 0 is the identity.
+ */
+interface Position {
+    int getSize();
+    /** Zobrist key of the stones; the side to move is not included. */
+    long getHash();
+    int getStoneCount();
+    /** 0 for an empty cell, else Board.WHITE or Board.BLACK. */
+    int stoneAt(int x, int y);
+
+    boolean addStone(int x, int y, boolean white);
+    void addStoneNoGUI(int x, int y, boolean black);
+    void removeStoneNoGUI(int x, int y);
+    boolean checkWinLast();
+    /**
+     * Five or more in a row of the colour that includes (x, y), which must hold a stone of that
+     * colour; a five elsewhere on the same lines does not count.
+     */
+    boolean hasFiveThrough(int x, int y, boolean white);
+
+    /** Candidate moves into out, returning the count; the centre on an empty board, none on a full one. */
+    int fillCandidates(int[] out);
+    int getCandidateCount();
+    void setCandidateRadius(int radius);
+    int getCandidateRadius();
+
+    /** Incrementally maintained consecutive-set score of one colour over all lines. */
+    int lineScore(boolean forBlack, boolean currentTurn);
+    /** Move-ordering score of a cell: attack plus defence on the four lines through it. */
+    int localScore(int x, int y, boolean white);
+
+    Position copy();
+
+    /**
+     * Smallest hash over the 8 symmetric images of the stones, so rotated and mirrored positions
+     * share it. Positions without symmetric hashes return getHash.
+     */
+    default long getCanonicalHash() { return getHash(); }
+
+    /** The symmetry that maps this position to the image getCanonicalHash belongs to. */
+    default int getCanonicalTransform() { return 0; }
+
+    /**
+     * Hash of the image under a symmetry; getCanonicalHash is the one of getCanonicalTransform,
+     * so callers needing both pick the transform once. Positions without symmetric hashes only
+     * know the identity.
+     */
+    default long getSymmetricHash(int transform) { return getHash(); }
+
+    /** Packed move under a symmetry. */
+    static int transformMove(int move, int transform, int size) {
+        int x = move % size, y = move / size;
+        if ((transform & 4) != 0) { int t = x; x = y; y = t; }
+        if ((transform & 1) != 0) x = size - 1 - x;
+        if ((transform & 2) != 0) y = size - 1 - y;
+        return y * size + x;
+    }
+
+    /** The symmetry that undoes the given one. */
+    static int inverseTransform(int transform) {
+        // a swap followed by a single mirror is a quarter turn, undone by the other quarter turn
+        return transform == 5 ? 6 : transform == 6 ? 5 : transform;
+    }
+
+    /** Board up to 64 x 64, SparseBoard beyond that. */
+    static Position create(int size) {
+        return size <= 64 ? new Board(size) : new SparseBoard(size);
+    }
+
+    default void thinkingStarted() {}
+    default void thinkingFinished() {}
+}
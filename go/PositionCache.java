@@ -0,0 +1,203 @@
+package go;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistent analysis cache: search results (score, depth, bound, best move) keyed by position,
+ * in a fixed-size open-addressing table stored in a memory-mapped file. Lookups read the mapped
+ * pages directly, and every JVM that opens the same file shares them through the OS page cache,
+ * so results survive restarts and are shared between games and processes.
+ *
+ * Layout: a 64-byte header (magic, format version, entry size, entry count, open generation,
+ * checksum) followed by buckets of four 16-byte entries. An entry is a check word and a data
+ * word packed like TranspositionTable's; the check word is the key xor-ed with the data, so an
+ * entry torn by a crash or by a concurrent writer reads as a miss. A file with a bad header or
+ * another version is replaced; new files are written next to the target and moved into place,
+ * so a crash never leaves a half-initialised file behind.
+ *
+ * The file size is fixed when it is created. When a bucket is full the shallowest entry goes,
+ * counting entries from earlier sessions (see the generation) as shallower the older they are.
+ * The generation is five bits and counts opens modulo 32, so an entry written 32 opens ago ranks
+ * like a current one again. Only the replacement order suffers; probes never depend on it.
+ */
+public final class PositionCache implements AutoCloseable {
+    // bump when the entry format or the meaning of stored scores changes
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    static final int ENTRY_BYTES = 16;
+    private static final long MAGIC = 0x474F4D4F4B55_4331L;   // "GOMOKUC1"
+    private static final int BUCKET = 4;
+    // data word as in TranspositionTable: score in the high half; move + 1, depth, bound, a used
+    // bit and the generation in the low half
+    private static final int USED = 1 << 26;
+    private static final int MAX_MEGABYTES = 1024;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int buckets;
+    private final int generation;
+
+    private PositionCache(Path file, FileChannel channel, MappedByteBuffer map, int buckets, int generation) {
+        this.file = file;
+        this.channel = channel;
+        this.map = map;
+        this.buckets = buckets;
+        this.generation = generation;
+    }
+
+    /**
+     * Opens the cache file, creating it with the given size if it does not exist or is not a
+     * valid cache of this version. An existing valid file keeps its size.
+     */
+    public static PositionCache open(Path file, int megabytes) throws IOException {
+        if (megabytes < 1 || megabytes > MAX_MEGABYTES)
+            throw new IllegalArgumentException("Cache size must be 1.." + MAX_MEGABYTES + " MB");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        if (!isValid(file)) create(file, megabytes);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            long entries = map.getLong(16);
+            // every open is a new generation; entries of older ones are evicted first
+            int generation = (map.getInt(24) + 1) & 0x1F;
+            map.putInt(24, generation);
+            map.putLong(56, checksum(map));
+            map.force();
+            return new PositionCache(file, channel, map, (int) (entries / BUCKET), generation);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean isValid(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_BYTES) return false;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) { }
+            if (header.hasRemaining()) return false;
+            long entries = header.getLong(16);
+            return header.getLong(0) == MAGIC && header.getInt(8) == VERSION && header.getInt(12) == ENTRY_BYTES
+                    && entries > 0 && entries % BUCKET == 0 && entries / BUCKET <= Integer.MAX_VALUE
+                    && ch.size() == HEADER_BYTES + entries * ENTRY_BYTES
+                    && header.getLong(56) == checksum(header);
+        }
+    }
+
+    // Writes an empty cache next to the target and moves it into place
+    private static void create(Path file, int megabytes) throws IOException {
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, MAGIC).putInt(8, VERSION).putInt(12, ENTRY_BYTES).putLong(16, entries).putInt(24, 0);
+            header.putLong(56, checksum(header));
+            ch.write(header, 0);
+            // extending the file leaves the entries zero, i.e. empty
+            ch.write(ByteBuffer.allocate(1), HEADER_BYTES + entries * ENTRY_BYTES - 1);
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long checksum(ByteBuffer header) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < 56; i += 8) {
+            h ^= header.getLong(i);
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    public Path getFile() { return file; }
+
+    /** Entries the file holds. */
+    public long capacity() { return (long) buckets * BUCKET; }
+
+    /** Copies the entry of the position into out; returns false if it is not stored. */
+    public boolean probe(long key, TranspositionTable.Entry out) {
+        long base = bucketOffset(key);
+        for (int i = 0; i < BUCKET; i++) {
+            long at = base + (long) i * ENTRY_BYTES;
+            long data = (long) LONGS.getOpaque(map, (int) (at + 8));
+            if (data == 0 || ((long) LONGS.getOpaque(map, (int) at) ^ data) != key) continue;
+            int m = (int) data;
+            out.score = (int) (data >> 32);
+            out.depth = (m >>> 16) & 0xFF;
+            out.bound = (m >>> 24) & 0x3;
+            out.move = (m & 0xFFFF) - 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores a search result. An entry of the same position is only replaced by one at least as
+     * deep; otherwise the first empty slot of the bucket is used, or the least valuable entry.
+     *
+     * @param move  best move packed as row * size + col, or -1
+     */
+    public void store(long key, int depth, int score, int bound, int move) {
+        long base = bucketOffset(key);
+        int victim = -1, victimValue = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET; i++) {
+            long at = base + (long) i * ENTRY_BYTES;
+            long data = (long) LONGS.getOpaque(map, (int) (at + 8));
+            if (data == 0) {
+                if (victimValue > Integer.MIN_VALUE) { victim = i; victimValue = Integer.MIN_VALUE; }
+                continue;
+            }
+            int m = (int) data;
+            int oldDepth = (m >>> 16) & 0xFF;
+            if (((long) LONGS.getOpaque(map, (int) at) ^ data) == key) {
+                if (oldDepth > depth) return;
+                victim = i;
+                break;
+            }
+            // older sessions count as two plies shallower per generation; the age wraps at 32
+            int age = (generation - (m >>> 27)) & 0x1F;
+            int value = oldDepth - 2 * age;
+            if (value < victimValue) { victim = i; victimValue = value; }
+        }
+        int m = (move + 1) | (Math.min(depth, 0xFF) << 16) | (bound << 24) | USED | (generation << 27);
+        long data = (long) score << 32 | (m & 0xFFFFFFFFL);
+        long at = base + (long) victim * ENTRY_BYTES;
+        // data first: until the check word follows, the slot reads as a miss
+        LONGS.setRelease(map, (int) (at + 8), data);
+        LONGS.setRelease(map, (int) at, key ^ data);
+    }
+
+    private long bucketOffset(long key) {
+        int bucket = (int) ((key ^ (key >>> 32)) & 0x7FFFFFFF) % buckets;
+        return HEADER_BYTES + (long) bucket * BUCKET * ENTRY_BYTES;
+    }
+
+    /** Writes the mapped pages to disk. The OS does this on its own as well. */
+    public void flush() { map.force(); }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
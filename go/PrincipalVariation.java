@@ -0,0 +1,21 @@
+package go;
+
+/** One line of a multi-PV analysis: a move, its score and the moves expected to follow it. */
+public final class PrincipalVariation {
+    private final int[][] moves;
+    private final int score;
+
+    PrincipalVariation(int[][] moves, int score) {
+        this.moves = moves;
+        this.score = score;
+    }
+
+    /** {row, col} of the move the line starts with. */
+    public int[] getMove() { return moves[0]; }
+
+    /** Moves of the line as {row, col}, starting with getMove, alternating sides. */
+    public int[][] getMoves() { return moves; }
+
+    /** Score from the point of view of the side to move, as in SearchResult.getScore. */
+    public int getScore() { return score; }
+}
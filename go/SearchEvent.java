@@ -0,0 +1,36 @@
+package go;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event committed after every calculateNextMove, carrying its SearchStats.
+ * Record with e.g. java -XX:StartFlightRecording:filename=games.jfr ... and inspect with
+ * jfr print --events go.Search games.jfr. Costs nothing while recording is off.
+ */
+@Name("go.Search")
+@Label("Gomoku Search")
+@Category("Gomoku")
+@Description("One move search of the Minimax engine")
+class SearchEvent extends Event {
+    @Label("Board Size") int boardSize;
+    @Label("Stones") int stones;
+    @Label("Threads") int threads;
+    @Label("Depth") int depth;
+    @Label("Nodes") long nodes;
+    @Label("Evaluations") long evaluations;
+    @Label("Cutoffs") long cutoffs;
+    @Label("First Move Cutoffs") long firstMoveCutoffs;
+    @Label("TT Probes") long ttProbes;
+    @Label("TT Hits") long ttHits;
+    @Label("Threat Solver Nodes") long threatNodes;
+    @Label("Effective Branching Factor") double branchingFactor;
+    @Label("Nodes Per Second") long nodesPerSecond;
+    @Label("Search Time") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    @Label("Ponder Hit") boolean ponderHit;
+    @Label("Cancelled") boolean cancelled;
+}
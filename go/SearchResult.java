@@ -0,0 +1,23 @@
+package go;
+
+/** Move chosen by a search together with its score and the statistics of that search. */
+public final class SearchResult {
+    private final int[] move;
+    private final int score;
+    private final SearchStats stats;
+
+    SearchResult(int[] move, int score, SearchStats stats) {
+        this.move = move;
+        this.score = score;
+        this.stats = stats;
+    }
+
+    /** {row, col}, or null if the search was cancelled. */
+    public int[] getMove() { return move; }
+    /**
+     * Score of the move from the mover's point of view, as in Minimax: beyond Minimax.MATE_BOUND
+     * a forced win (or below its negation a forced loss), else an evaluation. 0 for book moves.
+     */
+    public int getScore() { return score; }
+    public SearchStats getStats() { return stats; }
+}
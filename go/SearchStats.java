@@ -0,0 +1,67 @@
+package go;
+
+/**
+ * Counters of one calculateNextMove, summed over all search workers. Every worker counts into
+ * its own fields and the totals are taken once the search has finished, so concurrent searches
+ * of different engines never share a counter.
+ */
+public final class SearchStats {
+    private final long nodes, evaluations, cutoffs, firstMoveCutoffs, ttProbes, ttHits, threatNodes;
+    private final int depth;
+    private final long elapsedNanos;
+
+    SearchStats(long nodes, long evaluations, long cutoffs, long firstMoveCutoffs, long ttProbes,
+                long ttHits, long threatNodes, int depth, long elapsedNanos) {
+        this.nodes = nodes;
+        this.evaluations = evaluations;
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.ttProbes = ttProbes;
+        this.ttHits = ttHits;
+        this.threatNodes = threatNodes;
+        this.depth = depth;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Alpha-beta nodes visited. */
+    public long getNodes() { return nodes; }
+    /** Leaf positions scored by the evaluation. */
+    public long getEvaluations() { return evaluations; }
+    /** Nodes whose move loop ended in a beta cutoff. */
+    public long getCutoffs() { return cutoffs; }
+    /** Cutoffs produced by the first move searched. */
+    public long getFirstMoveCutoffs() { return firstMoveCutoffs; }
+    public long getTtProbes() { return ttProbes; }
+    public long getTtHits() { return ttHits; }
+    /** Nodes of the VCF/VCT threat solver run before the search. */
+    public long getThreatNodes() { return threatNodes; }
+    /** Deepest completed iteration. */
+    public int getDepth() { return depth; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** Share of the cutoffs made by the first move, a measure of move ordering quality. */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    public double getTtHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    /** Nodes to the power 1/depth: the average number of moves searched per node. */
+    public double getEffectiveBranchingFactor() {
+        return depth == 0 || nodes == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1_000_000_000L / Math.max(1, elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d, %d nodes (%d evals, %d threat) in %.1f ms, %d nps, "
+                        + "first-move cutoffs %.0f%%, tt hits %.0f%%, ebf %.2f",
+                depth, nodes, evaluations, threatNodes, elapsedNanos / 1e6, getNodesPerSecond(),
+                100 * getFirstMoveCutoffRate(), 100 * getTtHitRate(), getEffectiveBranchingFactor());
+    }
+}
@@ -0,0 +1,366 @@
+package go;
+
+import java.util.Arrays;
+
+/**
+ * Board for large games (up to 255 x 255) that stores only what is near the stones.
+ *
+ * One open-addressing hash table, keyed by packed cell, holds every stone and every empty cell
+ * within the candidate radius of a stone, with the cell's colour, its neighbouring-stone count
+ * and its position in the candidate list. Cells with neither a stone nor a neighbour have no
+ * entry, so memory, copies and candidate generation follow the number of stones.
+ *
+ * Line scores are kept incrementally like Board's: a move only changes the runs in the block of
+ * consecutive stones around it on each of its four lines, so those are rescored before and
+ * after and the difference is applied. Scores are the consecutive-set scores of
+ * PatternTable.DEFAULT; split shapes and the threat solver need Board's line bitboards.
+ */
+final class SparseBoard implements Position {
+    static final int MAX_SIZE = 255;
+
+    // Zobrist keys are derived from the cell instead of a table, so any size is covered
+    private static final long ZOBRIST_SEED = 0x5EED_5BA2_5EL;
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    private final int size;
+    // hash table entries: key = cell + 1 (0 = free), colour 0/WHITE/BLACK, neighbouring stones,
+    // slot in candidates or -1
+    private int[] keys;
+    private byte[] colours;
+    private int[] near;
+    private int[] slots;
+    private int used;
+
+    private int radius = 1;
+    private int[] candidates;
+    private int candidateCount;
+    private int stoneCount;
+    private long hash;
+    // [colour * 2 + (currentTurn ? 1 : 0)], colour 0 = white, 1 = black
+    private final int[] scoreTotals = new int[4];
+    private final int[] delta = new int[4];
+    private int lastX = -1, lastY = -1;
+
+    SparseBoard(int size) {
+        if (size < 5 || size > MAX_SIZE) throw new IllegalArgumentException("Unsupported board size " + size);
+        this.size = size;
+        keys = new int[64];
+        colours = new byte[64];
+        near = new int[64];
+        slots = new int[64];
+        candidates = new int[32];
+    }
+
+    SparseBoard(SparseBoard other) {
+        this.size = other.size;
+        this.keys = other.keys.clone();
+        this.colours = other.colours.clone();
+        this.near = other.near.clone();
+        this.slots = other.slots.clone();
+        this.used = other.used;
+        this.radius = other.radius;
+        this.candidates = Arrays.copyOf(other.candidates, Math.max(32, other.candidateCount));
+        this.candidateCount = other.candidateCount;
+        this.stoneCount = other.stoneCount;
+        this.hash = other.hash;
+        System.arraycopy(other.scoreTotals, 0, scoreTotals, 0, 4);
+        this.lastX = other.lastX;
+        this.lastY = other.lastY;
+    }
+
+    /** Sparse copy of any position; stones are added in row-major order. */
+    static SparseBoard of(Position p) {
+        if (p instanceof SparseBoard) return new SparseBoard((SparseBoard) p);
+        int n = p.getSize();
+        SparseBoard b = new SparseBoard(n);
+        b.setCandidateRadius(p.getCandidateRadius());
+        for (int y = 0; y < n; y++) for (int x = 0; x < n; x++) {
+            int t = p.stoneAt(x, y);
+            if (t != 0) b.addStone(x, y, t == Board.WHITE);
+        }
+        return b;
+    }
+
+    @Override public SparseBoard copy() { return new SparseBoard(this); }
+    @Override public int getSize() { return size; }
+    @Override public long getHash() { return hash; }
+    @Override public int getStoneCount() { return stoneCount; }
+    @Override public int getCandidateCount() { return candidateCount; }
+    @Override public int getCandidateRadius() { return radius; }
+
+    @Override
+    public int stoneAt(int x, int y) {
+        int i = find(y * size + x);
+        return i < 0 ? 0 : colours[i];
+    }
+
+    @Override
+    public boolean addStone(int x, int y, boolean white) {
+        if (x < 0 || y < 0 || x >= size || y >= size || stoneAt(x, y) != 0) return false;
+        int cell = y * size + x;
+        int colour = white ? Board.WHITE : Board.BLACK;
+        rescore(x, y, -1);
+        // insert may grow the table, so take the index before touching the arrays
+        int i = insert(cell);
+        colours[i] = (byte) colour;
+        rescore(x, y, +1);
+        hash ^= zobrist(colour, cell);
+        stoneCount++;
+        dropCandidate(cell);
+        countNeighbours(x, y, 1);
+        lastX = x;
+        lastY = y;
+        return true;
+    }
+
+    @Override
+    public void addStoneNoGUI(int x, int y, boolean black) { addStone(x, y, !black); }
+
+    @Override
+    public void removeStoneNoGUI(int x, int y) {
+        int cell = y * size + x;
+        int i = find(cell);
+        if (i < 0 || colours[i] == 0) return;
+        int colour = colours[i];
+        rescore(x, y, -1);
+        colours[i] = 0;
+        rescore(x, y, +1);
+        hash ^= zobrist(colour, cell);
+        stoneCount--;
+        countNeighbours(x, y, -1);
+        i = find(cell);
+        if (near[i] > 0) pushCandidate(cell);
+        else release(i);
+    }
+
+    @Override
+    public boolean checkWinLast() {
+        if (lastX < 0) return false;
+        int t = stoneAt(lastX, lastY);
+        return t != 0 && hasFiveThrough(lastX, lastY, t == Board.WHITE);
+    }
+
+    @Override
+    public boolean hasFiveThrough(int x, int y, boolean white) {
+        int colour = white ? Board.WHITE : Board.BLACK;
+        if (stoneAt(x, y) != colour) return false;
+        for (int[] d : DIRECTIONS)
+            if (1 + count(x, y, d[0], d[1], colour) + count(x, y, -d[0], -d[1], colour) >= 5) return true;
+        return false;
+    }
+
+    // Stones of the colour next to (x, y) going in one direction
+    private int count(int x, int y, int dx, int dy, int colour) {
+        int c = 0;
+        for (x += dx, y += dy; x >= 0 && y >= 0 && x < size && y < size && stoneAt(x, y) == colour; x += dx, y += dy) c++;
+        return c;
+    }
+
+    @Override
+    public int fillCandidates(int[] out) {
+        if (candidateCount == 0) {
+            // no candidates on a full board either
+            if (stoneCount > 0) return 0;
+            out[0] = (size / 2) * size + size / 2;
+            return 1;
+        }
+        System.arraycopy(candidates, 0, out, 0, candidateCount);
+        return candidateCount;
+    }
+
+    @Override
+    public void setCandidateRadius(int r) {
+        if (r < 1 || r > 2) throw new IllegalArgumentException("Candidate radius must be 1 or 2");
+        if (r == radius) return;
+        // rebuild from the stones in row-major order, like Board
+        int[] stones = new int[stoneCount];
+        int s = 0;
+        for (int i = 0; i < keys.length; i++) if (keys[i] != 0 && colours[i] != 0) stones[s++] = keys[i] - 1;
+        Arrays.sort(stones);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) continue;
+            near[i] = 0;
+            slots[i] = -1;
+        }
+        candidateCount = 0;
+        radius = r;
+        for (int cell : stones) countNeighbours(cell % size, cell / size, 1);
+        // drop entries of empty cells that are no longer near a stone
+        for (int i = 0; i < keys.length; ) {
+            if (keys[i] != 0 && colours[i] == 0 && near[i] == 0) release(i);
+            else i++;
+        }
+    }
+
+    // Adjusts the stone counts around (x, y) and keeps the candidate list in step
+    private void countNeighbours(int x, int y, int d) {
+        int y0 = Math.max(0, y - radius), y1 = Math.min(size - 1, y + radius);
+        int x0 = Math.max(0, x - radius), x1 = Math.min(size - 1, x + radius);
+        for (int ny = y0; ny <= y1; ny++) for (int nx = x0; nx <= x1; nx++) {
+            if (nx == x && ny == y) continue;
+            int cell = ny * size + nx;
+            int i = d > 0 ? insert(cell) : find(cell);
+            int count = near[i] += d;
+            if (colours[i] != 0) continue;
+            if (d > 0 && count == 1) pushCandidate(cell);
+            else if (d < 0 && count == 0) {
+                dropCandidate(cell);
+                release(find(cell));
+            }
+        }
+    }
+
+    private void pushCandidate(int cell) {
+        int i = find(cell);
+        if (slots[i] >= 0) return;
+        if (candidateCount == candidates.length) candidates = Arrays.copyOf(candidates, 2 * candidateCount);
+        slots[i] = candidateCount;
+        candidates[candidateCount++] = cell;
+    }
+
+    private void dropCandidate(int cell) {
+        int i = find(cell);
+        if (i < 0 || slots[i] < 0) return;
+        int slot = slots[i];
+        int last = candidates[--candidateCount];
+        candidates[slot] = last;
+        slots[find(last)] = slot;
+        slots[i] = -1;
+    }
+
+    @Override
+    public int lineScore(boolean forBlack, boolean currentTurn) {
+        return scoreTotals[(forBlack ? 2 : 0) + (currentTurn ? 1 : 0)];
+    }
+
+    // Adds (sign +1) or removes (sign -1) the scores of the runs that a change at (x, y) can affect
+    private void rescore(int x, int y, int sign) {
+        for (int[] d : DIRECTIONS) {
+            int dx = d[0], dy = d[1];
+            // the block of consecutive stones around (x, y), with (x, y) itself whatever it holds
+            int back = 0, ahead = 0;
+            while (onBoard(x - (back + 1) * dx, y - (back + 1) * dy) && stoneAt(x - (back + 1) * dx, y - (back + 1) * dy) != 0) back++;
+            while (onBoard(x + (ahead + 1) * dx, y + (ahead + 1) * dy) && stoneAt(x + (ahead + 1) * dx, y + (ahead + 1) * dy) != 0) ahead++;
+            Arrays.fill(delta, 0);
+            int runColour = 0, run = 0;
+            // open: the cell before the current run is an empty cell of the board
+            boolean open = false, prevEmpty = false;
+            for (int k = -back - 1; k <= ahead + 1; k++) {
+                int cx = x + k * dx, cy = y + k * dy;
+                boolean inside = onBoard(cx, cy);
+                int t = inside && k >= -back && k <= ahead ? stoneAt(cx, cy) : 0;
+                if (t != 0 && t == runColour) {
+                    run++;
+                } else {
+                    if (runColour != 0) {
+                        int blocks = (open ? 0 : 1) + (inside && t == 0 ? 0 : 1);
+                        int c = runColour == Board.WHITE ? 0 : 2;
+                        delta[c] += Minimax.getConsecutiveSetScore(run, blocks, false);
+                        delta[c + 1] += Minimax.getConsecutiveSetScore(run, blocks, true);
+                    }
+                    open = prevEmpty;
+                    runColour = t;
+                    run = 1;
+                }
+                prevEmpty = inside && t == 0;
+            }
+            for (int i = 0; i < 4; i++) scoreTotals[i] += sign * delta[i];
+        }
+    }
+
+    private boolean onBoard(int x, int y) {
+        return x >= 0 && y >= 0 && x < size && y < size;
+    }
+
+    @Override
+    public int localScore(int x, int y, boolean white) {
+        int me = white ? Board.WHITE : Board.BLACK, op = white ? Board.BLACK : Board.WHITE;
+        int score = 0;
+        for (int[] d : DIRECTIONS) score += runScore(x, y, d[0], d[1], me) + runScore(x, y, d[0], d[1], op);
+        return score;
+    }
+
+    // Score of the run of the colour through (x, y) once a stone of it is placed there
+    private int runScore(int x, int y, int dx, int dy, int colour) {
+        int ahead = count(x, y, dx, dy, colour), back = count(x, y, -dx, -dy, colour);
+        int ex = x + (ahead + 1) * dx, ey = y + (ahead + 1) * dy;
+        int bx = x - (back + 1) * dx, by = y - (back + 1) * dy;
+        int blocks = 2;
+        if (onBoard(ex, ey) && stoneAt(ex, ey) == 0) blocks--;
+        if (onBoard(bx, by) && stoneAt(bx, by) == 0) blocks--;
+        return Minimax.getConsecutiveSetScore(ahead + back + 1, blocks, true);
+    }
+
+    private static long zobrist(int colour, int cell) {
+        long z = ZOBRIST_SEED + (cell * 2L + colour) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // --- hash table ---
+
+    private static int home(int key, int mask) {
+        return (key * 0x9E3779B9 >>> 16) & mask;
+    }
+
+    private int find(int cell) {
+        int key = cell + 1, mask = keys.length - 1;
+        for (int i = home(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) return i;
+            if (keys[i] == 0) return -1;
+        }
+    }
+
+    // Index of the cell's entry, creating an empty one if needed
+    private int insert(int cell) {
+        int i = find(cell);
+        if (i >= 0) return i;
+        if (2 * (used + 1) > keys.length) grow();
+        int key = cell + 1, mask = keys.length - 1;
+        for (i = home(key, mask); keys[i] != 0; i = (i + 1) & mask) { }
+        keys[i] = key;
+        colours[i] = 0;
+        near[i] = 0;
+        slots[i] = -1;
+        used++;
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys, oldNear = near, oldSlots = slots;
+        byte[] oldColours = colours;
+        int capacity = oldKeys.length * 2, mask = capacity - 1;
+        keys = new int[capacity];
+        colours = new byte[capacity];
+        near = new int[capacity];
+        slots = new int[capacity];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = home(oldKeys[j], mask);
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            colours[i] = oldColours[j];
+            near[i] = oldNear[j];
+            slots[i] = oldSlots[j];
+        }
+    }
+
+    // Removes entry i, shifting later entries of the probe chain back (no tombstones)
+    private void release(int i) {
+        int mask = keys.length - 1;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int h = home(keys[j], mask);
+            // entry j may move to i unless its home lies cyclically in (i, j]
+            boolean stays = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (stays) continue;
+            keys[i] = keys[j];
+            colours[i] = colours[j];
+            near[i] = near[j];
+            slots[i] = slots[j];
+            i = j;
+        }
+        keys[i] = 0;
+        used--;
+    }
+}
@@ -0,0 +1,301 @@
+package go;
+
+/**
+ * Threat-space search for forced wins.
+ *
+ * VCF (victory by continuous fours) only lets the attacker play fours, so every defender reply
+ * is forced and the tree is a narrow line that can be followed 20+ moves deep. VCT (victory by
+ * continuous threats) also allows open threes; the defender may then answer on any cell that
+ * stops the open four or with a counter-four. Both run on the line bitboards of Board and stop
+ * at their own node and time limits, in which case no win is reported.
+ *
+ * Winning lines are returned as packed moves (row * size + col), attacker and defender
+ * alternating, starting with the attacker's first move. For VCT the line follows the last
+ * defence that was tried at every threat.
+ */
+class ThreatSolver {
+    private static final int FIVE = 0, FOUR = 1, THREE = 2, DEFENCE = 3;
+
+    private final long nodeLimit;
+    private final long timeLimitNanos;
+    private final int maxVcfMoves, maxVctMoves;
+
+    private Board board;
+    private int n;
+    private long nodes, deadline;
+    private boolean aborted;
+    private CancellationToken token;
+    // per-ply cell buffers, and a stamp per cell to collect cells without duplicates
+    private int[][] buffers = new int[0][], replies = new int[0][], gains = new int[0][];
+    private int[] stamp = new int[0];
+    private int epoch;
+    private final int[] line = new int[256];
+    private int lineLength;
+
+    /**
+     * @param nodeLimit        nodes per solve
+     * @param timeLimitMillis  wall-clock limit per solve
+     * @param maxVcfMoves      attacker moves in a VCF line
+     * @param maxVctMoves      attacker moves in a VCT line
+     */
+    ThreatSolver(long nodeLimit, long timeLimitMillis, int maxVcfMoves, int maxVctMoves) {
+        this.nodeLimit = nodeLimit;
+        this.timeLimitNanos = timeLimitMillis * 1_000_000L;
+        this.maxVcfMoves = Math.min(maxVcfMoves, line.length / 4 - 1);
+        this.maxVctMoves = Math.min(maxVctMoves, line.length / 4 - 1);
+    }
+
+    /** Forced win by fours for the given side, assumed to be on move; null if none was found. */
+    int[] solveVcf(Board b, boolean attackerWhite, CancellationToken cancel) {
+        start(b, cancel);
+        return vcf(attackerWhite, 0, maxVcfMoves) ? winningLine() : null;
+    }
+
+    /** Forced win by fours and open threes; tries VCF first. Null if none was found. */
+    int[] solveVct(Board b, boolean attackerWhite, CancellationToken cancel) {
+        start(b, cancel);
+        return vct(attackerWhite, 0) ? winningLine() : null;
+    }
+
+    long getNodes() { return nodes; }
+    boolean wasAborted() { return aborted; }
+
+    private void start(Board b, CancellationToken cancel) {
+        // a VCT line can end in a VCF of full length
+        int plies = maxVctMoves + maxVcfMoves + 1;
+        board = new Board(b);
+        n = b.getSize();
+        token = cancel;
+        nodes = 0;
+        aborted = false;
+        lineLength = 0;
+        deadline = System.nanoTime() + timeLimitNanos;
+        int cells = n * n;
+        if (buffers.length < plies + 1 || buffers[0].length != cells) {
+            buffers = new int[plies + 1][cells];
+            replies = new int[plies + 1][cells];
+            gains = new int[plies + 1][cells];
+            stamp = new int[cells];
+        }
+    }
+
+    private int[] winningLine() {
+        return java.util.Arrays.copyOf(line, lineLength);
+    }
+
+    private boolean outOfBudget() {
+        if (++nodes > nodeLimit || ((nodes & 255) == 0
+                && (System.nanoTime() > deadline || (token != null && token.isCancelled()))))
+            aborted = true;
+        return aborted;
+    }
+
+    private boolean vcf(boolean white, int ply, int maxPly) {
+        if (outOfBudget() || ply >= maxPly) return false;
+        int[] buf = buffers[ply];
+        if (collect(white, FIVE, buf) > 0) {
+            line[2 * ply] = buf[0];
+            lineLength = 2 * ply + 1;
+            return true;
+        }
+        // a defender five point must be blocked, and only one can be
+        int oppFives = collect(!white, FIVE, buf);
+        if (oppFives > 1) return false;
+        int forced = oppFives == 1 ? buf[0] : -1;
+        int count = collect(white, FOUR, buf);
+        for (int i = 0; i < count; i++) {
+            int m = buf[i];
+            if (forced >= 0 && m != forced) continue;
+            if (fourLine(white, m, ply, maxPly, true)) return true;
+            if (aborted) return false;
+        }
+        return false;
+    }
+
+    private boolean vct(boolean white, int ply) {
+        if (outOfBudget() || ply >= maxVctMoves) return false;
+        int[] buf = buffers[ply];
+        if (collect(white, FIVE, buf) > 0) {
+            line[2 * ply] = buf[0];
+            lineLength = 2 * ply + 1;
+            return true;
+        }
+        int oppFives = collect(!white, FIVE, buf);
+        if (oppFives > 1) return false;
+        int forced = oppFives == 1 ? buf[0] : -1;
+        if (forced < 0 && vcf(white, ply, ply + maxVcfMoves)) return true;
+        if (aborted) return false;
+
+        int fours = collect(white, FOUR, buf);
+        int count = collect(white, THREE, buf, fours);
+        for (int i = 0; i < count; i++) {
+            int m = buf[i];
+            if (forced >= 0 && m != forced) continue;
+            if (i < fours ? fourLine(white, m, ply, 0, false) : threeLine(white, m, ply)) return true;
+            if (aborted) return false;
+        }
+        return false;
+    }
+
+    // Attacker plays the four m; the defender has to take its five point. Continues with VCF or VCT.
+    private boolean fourLine(boolean white, int m, int ply, int maxPly, boolean vcfOnly) {
+        place(m, white);
+        int[] gain = gains[ply];
+        int g = collectThrough(m, white, FIVE, gain);
+        boolean win = false;
+        if (g >= 2) {
+            // open or double four: the defender blocks one point, the attacker takes the other
+            line[2 * ply] = m;
+            line[2 * ply + 1] = gain[0];
+            line[2 * ply + 2] = gain[1];
+            lineLength = 2 * ply + 3;
+            win = true;
+        } else if (g == 1) {
+            int d = gain[0];
+            place(d, !white);
+            win = vcfOnly ? vcf(white, ply + 1, maxPly) : vct(white, ply + 1);
+            board.removeStoneNoGUI(d % n, d / n);
+            if (win) {
+                line[2 * ply] = m;
+                line[2 * ply + 1] = d;
+            }
+        }
+        board.removeStoneNoGUI(m % n, m / n);
+        return win;
+    }
+
+    // Attacker plays the three m; every defence (blocking cells and counter-fours) must still lose.
+    private boolean threeLine(boolean white, int m, int ply) {
+        place(m, white);
+        int[] reply = replies[ply];
+        int count = collectThrough(m, white, DEFENCE, reply);
+        if (count > 0) count = collect(!white, FOUR, reply, count);
+        boolean win = count > 0;
+        for (int i = 0; i < count && win; i++) {
+            int r = reply[i];
+            place(r, !white);
+            win = vct(white, ply + 1);
+            board.removeStoneNoGUI(r % n, r / n);
+            if (win) {
+                line[2 * ply] = m;
+                line[2 * ply + 1] = r;
+            }
+        }
+        board.removeStoneNoGUI(m % n, m / n);
+        return win;
+    }
+
+    private void place(int cell, boolean white) {
+        board.addStoneNoGUI(cell % n, cell / n, !white);
+    }
+
+    // Collects the cells of a kind over every line of the board
+    private int collect(boolean white, int kind, int[] out) {
+        return collect(white, kind, out, 0);
+    }
+
+    // Appends to out[from..), skipping cells already in out[0..from); returns the new length
+    private int collect(boolean white, int kind, int[] out, int from) {
+        epoch++;
+        for (int i = from - 1; i >= 0; i--) stamp[out[i]] = epoch;
+        int count = from;
+        long full = board.fullMask();
+        for (int i = 0; i < n; i++) {
+            count = addCells(points(board.rowBits(white, i), board.rowBits(!white, i), full, kind), 0, i, out, count);
+            count = addCells(points(board.colBits(white, i), board.colBits(!white, i), full, kind), 1, i, out, count);
+        }
+        for (int i = 0; i < board.lineCount(); i++) {
+            count = addCells(points(board.diagBits(white, i), board.diagBits(!white, i), board.diagMask(i), kind), 2, i, out, count);
+            count = addCells(points(board.antiBits(white, i), board.antiBits(!white, i), board.antiMask(i), kind), 3, i, out, count);
+        }
+        return count;
+    }
+
+    // Collects the cells of a kind on the four lines through one cell
+    private int collectThrough(int cell, boolean white, int kind, int[] out) {
+        epoch++;
+        int r = cell / n, c = cell % n;
+        int d = r - c + n - 1, a = r + c;
+        long full = board.fullMask();
+        int count = addCells(points(board.rowBits(white, r), board.rowBits(!white, r), full, kind), 0, r, out, 0);
+        count = addCells(points(board.colBits(white, c), board.colBits(!white, c), full, kind), 1, c, out, count);
+        count = addCells(points(board.diagBits(white, d), board.diagBits(!white, d), board.diagMask(d), kind), 2, d, out, count);
+        return addCells(points(board.antiBits(white, a), board.antiBits(!white, a), board.antiMask(a), kind), 3, a, out, count);
+    }
+
+    // Maps the bits of one line back to packed cells, skipping cells already collected
+    private int addCells(long bits, int family, int index, int[] out, int count) {
+        while (bits != 0) {
+            int p = Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            int cell;
+            switch (family) {
+                case 0: cell = index * n + p; break;
+                case 1: cell = p * n + index; break;
+                case 2: cell = (p + index - (n - 1)) * n + p; break;
+                default: cell = (index - p) * n + p; break;
+            }
+            if (stamp[cell] != epoch) {
+                stamp[cell] = epoch;
+                out[count++] = cell;
+            }
+        }
+        return count;
+    }
+
+    private static long points(long own, long opp, long valid, int kind) {
+        long empty = valid & ~(own | opp);
+        switch (kind) {
+            case FIVE: return fivePoints(own, empty);
+            case FOUR: return fourPoints(own, empty);
+            case THREE: return threePoints(own, empty);
+            default: return defencePoints(own, empty);
+        }
+    }
+
+    // Cells completing five: windows of five cells with four own stones and one empty cell
+    static long fivePoints(long own, long empty) {
+        long r = 0;
+        for (int k = 0; k < 5; k++) {
+            long w = empty >>> k;
+            for (int j = 0; j < 5; j++) if (j != k) w &= own >>> j;
+            r |= w << k;
+        }
+        return r;
+    }
+
+    // Cells making a four: windows of five cells with three own stones and two empty cells
+    static long fourPoints(long own, long empty) {
+        long r = 0;
+        for (int a = 0; a < 5; a++) for (int b = a + 1; b < 5; b++) {
+            long w = (empty >>> a) & (empty >>> b);
+            for (int j = 0; j < 5; j++) if (j != a && j != b) w &= own >>> j;
+            r |= w << a | w << b;
+        }
+        return r;
+    }
+
+    // Cells making an open three: windows of six with empty ends and two own stones inside
+    static long threePoints(long own, long empty) {
+        long ends = empty & (empty >>> 5);
+        long r = 0;
+        for (int a = 1; a < 5; a++) for (int b = a + 1; b < 5; b++) {
+            long w = ends & (empty >>> a) & (empty >>> b);
+            for (int j = 1; j < 5; j++) if (j != a && j != b) w &= own >>> j;
+            r |= w << a | w << b;
+        }
+        return r;
+    }
+
+    // Cells stopping an open three: its open-four point and both ends of the window of six
+    static long defencePoints(long own, long empty) {
+        long ends = empty & (empty >>> 5);
+        long r = 0;
+        for (int a = 1; a < 5; a++) {
+            long w = ends & (empty >>> a);
+            for (int j = 1; j < 5; j++) if (j != a) w &= own >>> j;
+            r |= w | w << a | w << 5;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,92 @@
+package go;
+
+/**
+ * Fixed-size transposition table for the alpha-beta search.
+ *
+ * Entries live in parallel primitive arrays sized from a memory budget, so the table never
+ * allocates after construction. Each slot holds a check word and a data word with the score,
+ * the best move, the remaining depth, the bound type and the search generation.
+ * A slot is overwritten when the new entry is at least as deep, belongs to the same position,
+ * or was written by an earlier search (depth-preferred replacement with aging).
+ *
+ * The table is shared by all search threads without locking. The check word is the key xor-ed
+ * with the data word, so an entry torn by concurrent writers fails the key comparison on probe
+ * and reads as a miss.
+ */
+class TranspositionTable {
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    // bytes per entry: check + data
+    static final int ENTRY_BYTES = 8 + 8;
+    private static final int USED = 1 << 26;
+
+    /** Probe result; every search thread owns one and reuses it. */
+    static final class Entry {
+        int score;
+        int depth, bound, move;
+    }
+
+    private final long[] checks;
+    // high half the score, low half the meta bits:
+    // bits 0-15 move + 1 (0 = none), 16-23 depth, 24-25 bound, 26 used, 27-31 generation
+    private final long[] data;
+    private final int mask;
+    private volatile int generation;
+
+    /**
+     * @param megabytes  memory budget; the entry count is rounded down to a power of two
+     */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(1L, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        int capacity = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+        checks = new long[capacity];
+        data = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    int capacity() { return mask + 1; }
+
+    /** Starts a new search; entries of older searches become replaceable. */
+    void newSearch() { generation = (generation + 1) & 0x1F; }
+
+    void clear() {
+        java.util.Arrays.fill(checks, 0L);
+        java.util.Arrays.fill(data, 0L);
+    }
+
+    /** Copies the entry of the position into out; returns false if it is not stored. */
+    boolean probe(long key, Entry out) {
+        int slot = index(key);
+        long d = data[slot];
+        int m = (int) d;
+        if (m == 0 || (checks[slot] ^ d) != key) return false;
+        out.score = (int) (d >> 32);
+        out.depth = (m >>> 16) & 0xFF;
+        out.bound = (m >>> 24) & 0x3;
+        out.move = (m & 0xFFFF) - 1;
+        return true;
+    }
+
+    /**
+     * @param move  best move packed as row * size + col, or -1
+     */
+    void store(long key, int depth, int score, int bound, int move) {
+        int slot = index(key);
+        long oldData = data[slot];
+        int old = (int) oldData;
+        boolean same = old != 0 && (checks[slot] ^ oldData) == key;
+        if (old != 0 && !same && (old >>> 27) == generation && ((old >>> 16) & 0xFF) > depth) {
+            return;
+        }
+        // keep the old best move when the new entry has none for the same position
+        if (move < 0 && same) move = (old & 0xFFFF) - 1;
+        int m = (move + 1) | (Math.min(depth, 0xFF) << 16) | (bound << 24) | USED | (generation << 27);
+        long d = (long) score << 32 | (m & 0xFFFFFFFFL);
+        data[slot] = d;
+        checks[slot] = key ^ d;
+    }
+
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,84 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/** Board's line bitboards against the matrix checks they replaced (Check.win, Check.generateMoves). */
+class BitboardEquivalenceTest {
+
+    @Test
+    void bitboardsMatchTheMatrix() {
+        Random rnd = new Random(1);
+        for (int game = 0; game < 300; game++) {
+            int n = rnd.nextBoolean() ? 15 : 19;
+            Board b = new Board(n);
+            for (int step = 0; step < 100; step++) {
+                int x = rnd.nextInt(n), y = rnd.nextInt(n);
+                boolean white = rnd.nextBoolean();
+                if (rnd.nextInt(4) == 0) {
+                    b.removeStoneNoGUI(x, y);
+                } else {
+                    if (b.addStone(x, y, white))
+                        assertEquals(Check.win(b.getBoardMatrix(), x, y, white ? Board.WHITE : Board.BLACK),
+                                b.checkWin(x, y, white), "game " + game + " step " + step);
+                }
+                assertMatches(b, "game " + game + " step " + step);
+            }
+            assertMatches(new Board(b), "copy of game " + game);
+        }
+    }
+
+    @Test
+    void fiveAtTheEdges() {
+        for (int n : new int[]{15, 19}) {
+            // rows, columns and both diagonals ending in a corner
+            int[][][] lines = {
+                {{0, 0}, {1, 0}, {2, 0}, {3, 0}, {4, 0}},
+                {{n - 1, n - 5}, {n - 1, n - 4}, {n - 1, n - 3}, {n - 1, n - 2}, {n - 1, n - 1}},
+                {{n - 5, n - 5}, {n - 4, n - 4}, {n - 3, n - 3}, {n - 2, n - 2}, {n - 1, n - 1}},
+                {{n - 1, 0}, {n - 2, 1}, {n - 3, 2}, {n - 4, 3}, {n - 5, 4}},
+            };
+            for (int[][] line : lines) {
+                Board b = new Board(n);
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(false, b.hasFive(true));
+                    b.addStone(line[i][0], line[i][1], true);
+                }
+                assertEquals(true, b.hasFive(true));
+                assertEquals(false, b.hasFive(false));
+                assertEquals(true, b.checkWinLast());
+            }
+        }
+    }
+
+    private static void assertMatches(Board b, String where) {
+        int n = b.getSize();
+        int[][] m = b.getBoardMatrix();
+        int stones = 0;
+        boolean[] five = new boolean[2];
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                assertEquals(m[y][x], b.stoneAt(x, y), where);
+                if (m[y][x] == 0) continue;
+                stones++;
+                boolean win = Check.win(m, x, y, m[y][x]);
+                assertEquals(win, b.hasFiveThrough(x, y, m[y][x] == Board.WHITE), where);
+                five[m[y][x] == Board.WHITE ? 0 : 1] |= win;
+            }
+        }
+        assertEquals(stones, b.getStoneCount(), where);
+        assertEquals(five[0], b.hasFive(true), where);
+        assertEquals(five[1], b.hasFive(false), where);
+        assertEquals(moveSet(Check.generateMoves(m), n), moveSet(b.generateMoves(), n), where);
+    }
+
+    private static Set<Integer> moveSet(Iterable<int[]> moves, int n) {
+        Set<Integer> set = new HashSet<>();
+        for (int[] mv : moves) set.add(mv[0] * n + mv[1]);
+        return set;
+    }
+}
@@ -0,0 +1,139 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Both record formats, skipping of malformed records, and rejection of illegal moves. */
+class GameRecordReaderTest {
+    @TempDir
+    Path dir;
+
+    private static final String MOVE_LISTS = String.join("\n",
+            "# comment",
+            "",
+            "h8 i9 h9",
+            "19 k10 a1 s19",
+            "15 h8 h8",
+            "15 h8 i9");
+
+    private static final String PSQ = String.join("\n",
+            "Piskvorky 20x20, 11:11, 0",
+            "10,10,0",
+            "11,10,0",
+            "1,20,0",
+            "Piskvork",
+            "3,3,0");
+
+    @Test
+    void readsMoveLists() throws IOException {
+        try (GameRecordReader in = new GameRecordReader(write("games.txt", MOVE_LISTS))) {
+            GameRecordReader.GameRecord g = in.next();
+            // default size 15; h8 is column h, row 8 from the bottom
+            assertEquals(15, g.size);
+            assertArrayEquals(new int[]{7 * 15 + 7, 6 * 15 + 8, 6 * 15 + 7}, g.moves);
+            assertEquals(dir.resolve("games.txt") + ":3", g.source);
+
+            g = in.next();
+            assertEquals(19, g.size);
+            assertArrayEquals(new int[]{9 * 19 + 10, 18 * 19, 18}, g.moves);
+
+            // the occupied cell is reported with its line, and reading goes on after it
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, in::next);
+            assertEquals(dir.resolve("games.txt") + ":5: illegal move 2 at h8", e.getMessage());
+            assertArrayEquals(new int[]{112, 6 * 15 + 8}, in.next().moves);
+            assertNull(in.next());
+        }
+    }
+
+    @Test
+    void readsPsqUpToTheFirstOtherLine() throws IOException {
+        try (GameRecordReader in = new GameRecordReader(write("game.psq", PSQ))) {
+            GameRecordReader.GameRecord g = in.next();
+            // 1-based x,y from the top left
+            assertEquals(20, g.size);
+            assertArrayEquals(new int[]{9 * 20 + 9, 9 * 20 + 10, 19 * 20}, g.moves);
+            assertNull(in.next());
+        }
+    }
+
+    @Test
+    void rejectsMalformedRecords() {
+        String[] bad = {
+            "15 h8 p8",     // column off the board
+            "15 h8 h16",    // row off the board
+            "15 h8 h0",     // row below the board
+            "15 h8 8h",     // not a move
+            "4 a1",         // board too small
+            "27 a1",        // board too large
+            "15 h8 h",      // no row
+        };
+        for (String line : bad)
+            assertThrows(IllegalArgumentException.class, () -> GameRecordReader.parseMoveList("test", line), line);
+    }
+
+    @Test
+    void rejectsBadPsqFiles() throws IOException {
+        Path noHeader = write("a.psq", "10,10,0\n");
+        Path occupied = write("b.psq", "Piskvorky 15x15, 11:11, 0\n8,8,0\n8,8,0\n");
+        Path tooLarge = write("c.psq", "Piskvorky 30x30, 11:11, 0\n1,1,0\n");
+        Path empty = write("d.psq", "");
+        for (Path p : new Path[]{noHeader, occupied, tooLarge, empty}) {
+            try (GameRecordReader in = new GameRecordReader(p)) {
+                assertThrows(IllegalArgumentException.class, in::next, p.toString());
+                assertNull(in.next());
+            }
+        }
+    }
+
+    @Test
+    void walksDirectories() throws IOException {
+        write("games.txt", MOVE_LISTS);
+        write("game.psq", PSQ);
+        Files.createDirectory(dir.resolve("more"));
+        write("more/one.txt", "15 a1 b2 c3");
+        Set<Integer> sizes = new HashSet<>();
+        int games = 0, skipped = 0;
+        try (GameRecordReader in = new GameRecordReader(dir)) {
+            while (true) {
+                GameRecordReader.GameRecord g;
+                try {
+                    g = in.next();
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                    continue;
+                }
+                if (g == null) break;
+                games++;
+                sizes.add(g.size);
+            }
+        }
+        assertEquals(5, games);
+        assertEquals(1, skipped);
+        assertEquals(Set.of(15, 19, 20), sizes);
+    }
+
+    @Test
+    void formatsMovesAsTheyAreRead() {
+        for (int size : new int[]{5, 15, 19, 26}) {
+            for (int mv = 0; mv < size * size; mv++) {
+                String text = GameRecordReader.formatMove(mv, size);
+                assertArrayEquals(new int[]{mv}, GameRecordReader.parseMoveList("test", size + " " + text).moves, text);
+            }
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Board's incrementally kept line scores against a full rescan and the original matrix evaluators. */
+class IncrementalScoreTest {
+    private static final boolean[] BOTH = {true, false};
+
+    @Test
+    void incrementalScoresMatchFullScan() {
+        Random rnd = new Random(1);
+        for (int game = 0; game < 300; game++) {
+            int n = rnd.nextBoolean() ? 15 : 19;
+            Board b = new Board(n);
+            for (int step = 0; step < 120; step++) {
+                int x = rnd.nextInt(n), y = rnd.nextInt(n);
+                // about one removal for every three placements, so lines shrink as well as grow
+                if (rnd.nextInt(4) == 0) b.removeStoneNoGUI(x, y);
+                else b.addStone(x, y, rnd.nextBoolean());
+                assertScoresMatch(b, "game " + game + " step " + step);
+            }
+        }
+    }
+
+    @Test
+    void copiesKeepTheScores() {
+        Random rnd = new Random(2);
+        Board b = new Board(15);
+        for (int i = 0; i < 80; i++) b.addStone(rnd.nextInt(15), rnd.nextInt(15), rnd.nextBoolean());
+        Board copy = new Board(b);
+        for (boolean forBlack : BOTH)
+            for (boolean blacksTurn : BOTH)
+                assertEquals(Minimax.getScore(b, forBlack, blacksTurn), Minimax.getScore(copy, forBlack, blacksTurn));
+    }
+
+    private static void assertScoresMatch(Board b, String where) {
+        int[][] m = b.getBoardMatrix();
+        for (boolean forBlack : BOTH) {
+            for (boolean blacksTurn : BOTH) {
+                int full = Minimax.scanLines(b, forBlack, blacksTurn);
+                assertEquals(full, Minimax.getScore(b, forBlack, blacksTurn), where);
+                int matrix = Minimax.evaluateHorizontal(m, forBlack, blacksTurn)
+                        + Minimax.evaluateVertical(m, forBlack, blacksTurn)
+                        + Minimax.evaluateDiagonal(m, forBlack, blacksTurn);
+                assertEquals(matrix, full, where);
+            }
+        }
+    }
+}
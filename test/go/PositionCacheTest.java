@@ -0,0 +1,120 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Round trips through the file, and what a damaged entry or header turns into. */
+class PositionCacheTest {
+    private static final long KEY = 0x1234_5678_9ABC_DEF1L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void storedEntrySurvivesReopen() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            cache.store(KEY, 7, -42, TranspositionTable.EXACT, 113);
+        }
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            TranspositionTable.Entry e = new TranspositionTable.Entry();
+            assertTrue(cache.probe(KEY, e));
+            assertEquals(7, e.depth);
+            assertEquals(-42, e.score);
+            assertEquals(TranspositionTable.EXACT, e.bound);
+            assertEquals(113, e.move);
+            assertFalse(cache.probe(KEY + 1, e));
+        }
+    }
+
+    @Test
+    void corruptedEntryReadsAsMiss() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            cache.store(KEY, 7, -42, TranspositionTable.EXACT, 113);
+        }
+        // flip one bit of the score in the only data word written
+        long data = findDataWord(file);
+        patch(file, data + 4, (byte) 0x01);
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            assertFalse(cache.probe(KEY, new TranspositionTable.Entry()));
+        }
+    }
+
+    @Test
+    void corruptedHeaderRecreatesFile() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            cache.store(KEY, 7, -42, TranspositionTable.EXACT, 113);
+        }
+        // the entry count no longer matches the checksum
+        patch(file, 16, (byte) 0x7F);
+        try (PositionCache cache = PositionCache.open(file, 2)) {
+            assertFalse(cache.probe(KEY, new TranspositionTable.Entry()));
+            // recreated with the requested size rather than the old one
+            assertEquals(2L * 1024 * 1024 / PositionCache.ENTRY_BYTES, cache.capacity());
+        }
+        assertEquals(PositionCache.HEADER_BYTES + 2L * 1024 * 1024, Files.size(file));
+        assertFalse(Files.exists(dir.resolve("cache.bin.tmp")));
+    }
+
+    @Test
+    void truncatedFileRecreated() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        Files.write(file, new byte[PositionCache.HEADER_BYTES - 1]);
+        try (PositionCache cache = PositionCache.open(file, 1)) {
+            cache.store(KEY, 3, 5, TranspositionTable.LOWER, 0);
+            assertTrue(cache.probe(KEY, new TranspositionTable.Entry()));
+        }
+    }
+
+    @Test
+    void generationCountsOpensModulo32() throws IOException {
+        Path file = dir.resolve("cache.bin");
+        for (int i = 1; i <= 33; i++) {
+            PositionCache.open(file, 1).close();
+            assertEquals(i % 32, readHeaderInt(file, 24));
+        }
+    }
+
+    private static long findDataWord(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(PositionCache.ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (long at = PositionCache.HEADER_BYTES; at < ch.size(); at += PositionCache.ENTRY_BYTES) {
+                entry.clear();
+                ch.read(entry, at);
+                if (entry.getLong(8) != 0) return at + 8;
+            }
+        }
+        throw new AssertionError("no entry written");
+    }
+
+    private static void patch(Path file, long at, byte mask) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, at);
+            b.put(0, (byte) (b.get(0) ^ mask));
+            b.rewind();
+            ch.write(b, at);
+        }
+    }
+
+    private static int readHeaderInt(Path file, long at) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            ch.read(b, at);
+            return b.getInt(0);
+        }
+    }
+}
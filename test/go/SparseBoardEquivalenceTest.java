@@ -0,0 +1,114 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/** SparseBoard against Board: line scores, candidates, move-ordering scores and fives. */
+class SparseBoardEquivalenceTest {
+    private static final boolean[] BOTH = {true, false};
+    // stones of the large boards stay in a corner window this wide, see largeBoardsMatchTheCorner
+    private static final int WINDOW = 40;
+
+    @Test
+    void sparseMatchesBoard() {
+        Random rnd = new Random(1);
+        for (int game = 0; game < 200; game++) {
+            int n = 5 + rnd.nextInt(60);
+            play(rnd, new SparseBoard(n), new Board(n), 0, 0, n, 150, "size " + n + " game " + game);
+        }
+    }
+
+    /**
+     * Sizes above 64 have no Board to compare with, so the stones stay within WINDOW cells of one
+     * corner and a Board(64) holds the same stones moved by off. Runs, their ends and candidates
+     * then never reach an edge the two boards do not share.
+     */
+    @Test
+    void largeBoardsMatchTheCorner() {
+        Random rnd = new Random(2);
+        for (int n : new int[]{65, 100, SparseBoard.MAX_SIZE}) {
+            for (int game = 0; game < 6; game++) {
+                boolean far = game % 2 == 1;
+                int off = far ? n - 64 : 0;
+                int from = far ? n - WINDOW : 0;
+                // several hundred stones, so the hash table grows and entries are released
+                play(rnd, new SparseBoard(n), new Board(64), off, from, WINDOW, 600, "size " + n + " game " + game);
+            }
+        }
+    }
+
+    @Test
+    void copiesMatch() {
+        Random rnd = new Random(3);
+        SparseBoard s = new SparseBoard(19);
+        Board b = new Board(19);
+        play(rnd, s, b, 0, 0, 19, 120, "game");
+        assertMatches(s.copy(), b, 0, 0, 19, rnd, "copy");
+        assertMatches(SparseBoard.of(b), b, 0, 0, 19, rnd, "of");
+    }
+
+    // Random placements, removals and radius changes within [from, from + span) of the sparse
+    // board; the board holds each stone at the coordinates less off
+    private static void play(Random rnd, SparseBoard s, Board b, int off, int from, int span, int steps, String game) {
+        for (int step = 0; step < steps; step++) {
+            int x = from + rnd.nextInt(span), y = from + rnd.nextInt(span);
+            int op = rnd.nextInt(20);
+            if (op == 0) {
+                int r = 1 + rnd.nextInt(2);
+                s.setCandidateRadius(r);
+                b.setCandidateRadius(r);
+            } else if (op < 6) {
+                s.removeStoneNoGUI(x, y);
+                b.removeStoneNoGUI(x - off, y - off);
+            } else {
+                boolean white = rnd.nextBoolean();
+                assertEquals(b.addStone(x - off, y - off, white), s.addStone(x, y, white), game + " step " + step);
+            }
+            assertMatches(s, b, off, from, span, rnd, game + " step " + step);
+        }
+    }
+
+    private static void assertMatches(SparseBoard s, Board b, int off, int from, int span, Random rnd, String where) {
+        assertEquals(b.getStoneCount(), s.getStoneCount(), where);
+        assertEquals(b.getCandidateRadius(), s.getCandidateRadius(), where);
+        for (boolean forBlack : BOTH)
+            for (boolean currentTurn : BOTH)
+                assertEquals(b.lineScore(forBlack, currentTurn), s.lineScore(forBlack, currentTurn), where);
+        for (int y = from; y < from + span; y++) {
+            for (int x = from; x < from + span; x++) {
+                int t = b.stoneAt(x - off, y - off);
+                assertEquals(t, s.stoneAt(x, y), where);
+                if (t != 0) assertEquals(b.hasFiveThrough(x - off, y - off, t == Board.WHITE),
+                        s.hasFiveThrough(x, y, t == Board.WHITE), where + " five at " + x + "," + y);
+            }
+        }
+        // an empty board falls back to its own centre
+        if (s.getStoneCount() == 0 && s.getSize() != b.getSize()) return;
+        Set<Long> candidates = candidates(s, 0);
+        assertEquals(candidates(b, off), candidates, where);
+        for (long c : candidates) {
+            int x = (int) (c >> 32), y = (int) c;
+            for (boolean white : BOTH)
+                assertEquals(b.localScore(x - off, y - off, white), s.localScore(x, y, white), where + " local at " + x + "," + y);
+        }
+        // an empty cell away from the stones, on a line with some
+        int x = from + rnd.nextInt(span), y = from + rnd.nextInt(span);
+        if (s.stoneAt(x, y) == 0)
+            for (boolean white : BOTH)
+                assertEquals(b.localScore(x - off, y - off, white), s.localScore(x, y, white), where + " local at " + x + "," + y);
+    }
+
+    // Candidate cells as (x + off) << 32 | (y + off), so both boards are in the sparse board's frame
+    private static Set<Long> candidates(Position p, int off) {
+        int n = p.getSize();
+        int[] cells = new int[Math.max(1, p.getCandidateCount())];
+        int count = p.fillCandidates(cells);
+        Set<Long> set = new HashSet<>();
+        for (int i = 0; i < count; i++) set.add((long) (cells[i] % n + off) << 32 | (cells[i] / n + off));
+        return set;
+    }
+}
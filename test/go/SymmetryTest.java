@@ -0,0 +1,88 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The symmetry invariants the opening book and the position cache rely on: every image of a
+ * position has the same canonical hash, and moves stored in the canonical frame come back as the
+ * same move in any image.
+ */
+class SymmetryTest {
+
+    @Test
+    void transformsRoundTrip() {
+        for (int n : new int[]{5, 15, 19, 64}) {
+            for (int t = 0; t < 8; t++) {
+                for (int cell = 0; cell < n * n; cell++) {
+                    int image = Position.transformMove(cell, t, n);
+                    assertEquals(cell, Position.transformMove(image, Position.inverseTransform(t), n), "t=" + t);
+                }
+            }
+        }
+    }
+
+    @Test
+    void imagesShareTheCanonicalHash() {
+        Random rnd = new Random(3);
+        for (int trial = 0; trial < 2000; trial++) {
+            Board b = randomBoard(rnd);
+            int n = b.getSize();
+            for (int t = 0; t < 8; t++) {
+                Board image = image(b, t);
+                // the incrementally kept hash of each image is the hash of that image built from scratch
+                assertEquals(image.getHash(), b.getSymmetricHash(t), "trial " + trial + " t=" + t);
+                assertEquals(b.getCanonicalHash(), image.getCanonicalHash(), "trial " + trial + " t=" + t);
+                assertEquals(image.getCanonicalHash(), image.getSymmetricHash(image.getCanonicalTransform()));
+
+                // a move stored in the canonical frame of b and read back in the image's frame is
+                // the image of the move, up to a symmetry of the position itself
+                int move = emptyCell(b, rnd);
+                if (move < 0) continue;
+                int canonical = Position.transformMove(move, b.getCanonicalTransform(), n);
+                int read = Position.transformMove(canonical, Position.inverseTransform(image.getCanonicalTransform()), n);
+                Board played = new Board(b), imagePlayed = new Board(image);
+                played.addStone(move % n, move / n, true);
+                imagePlayed.addStone(read % n, read / n, true);
+                assertEquals(played.getCanonicalHash(), imagePlayed.getCanonicalHash(), "trial " + trial + " t=" + t);
+            }
+        }
+    }
+
+    // Random stones on a random board size, some of them removed again
+    private static Board randomBoard(Random rnd) {
+        int n = 5 + rnd.nextInt(20);
+        Board b = new Board(n);
+        int stones = rnd.nextInt(Math.min(30, n * n));
+        for (int i = 0; i < stones; i++) b.addStone(rnd.nextInt(n), rnd.nextInt(n), rnd.nextBoolean());
+        if (rnd.nextBoolean())
+            for (int y = 0; y < n; y++)
+                for (int x = 0; x < n; x++)
+                    if (b.stoneAt(x, y) != 0 && rnd.nextInt(4) == 0) b.removeStoneNoGUI(x, y);
+        return b;
+    }
+
+    private static Board image(Board b, int t) {
+        int n = b.getSize();
+        Board image = new Board(n);
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                if (b.stoneAt(x, y) == 0) continue;
+                int mv = Position.transformMove(y * n + x, t, n);
+                image.addStone(mv % n, mv / n, b.stoneAt(x, y) == Board.WHITE);
+            }
+        }
+        return image;
+    }
+
+    private static int emptyCell(Board b, Random rnd) {
+        int n = b.getSize();
+        if (b.getStoneCount() == n * n) return -1;
+        while (true) {
+            int cell = rnd.nextInt(n * n);
+            if (b.stoneAt(cell % n, cell / n) == 0) return cell;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package go;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lines found by the threat solver, replayed move by move on a plain Board: every VCF defence is
+ * the only cell that stops a five, the line ends in one, and no defence at all saves a VCT win.
+ */
+class ThreatSolverTest {
+    // node-limited only, so what is found does not depend on the machine
+    private static ThreatSolver solver() {
+        return new ThreatSolver(200_000, 3_600_000, 20, 4);
+    }
+
+    @Test
+    void vcfLinesAreForcedWins() {
+        ThreatSolver solver = solver();
+        int lines = 0;
+        for (long seed = 0; seed < 400; seed++) {
+            int n = seed % 2 == 0 ? 15 : 19;
+            Board b = ParallelSearchBenchmark.randomPosition(n, 20 + (int) (seed % 40), seed);
+            boolean white = b.getStoneCount() % 2 == 1;
+            int[] line = solver.solveVcf(b, white, new CancellationToken());
+            if (line == null) continue;
+            assertForcedWin(b, white, line, true, "seed " + seed);
+            lines++;
+        }
+        // enough wins that the check cannot pass on a handful of trivial fives
+        assertTrue(lines >= 50, "only " + lines + " VCF lines");
+    }
+
+    @Test
+    void vctWinsSurviveEveryDefence() {
+        ThreatSolver solver = solver();
+        int wins = 0;
+        for (long seed = 0; seed < 400 && wins < 12; seed++) {
+            int n = seed % 2 == 0 ? 15 : 19;
+            // with more stones nearly every win is a VCF already
+            Board b = ParallelSearchBenchmark.randomPosition(n, 10 + (int) (seed % 5), seed);
+            boolean white = b.getStoneCount() % 2 == 1;
+            if (solver.solveVcf(b, white, new CancellationToken()) != null) continue;
+            int[] line = solver.solveVct(b, white, new CancellationToken());
+            if (line == null) continue;
+            String where = "seed " + seed;
+            assertForcedWin(b, white, line, false, where);
+            // the first threat, then every empty cell as the defence
+            Board after = new Board(b);
+            after.addStone(line[0] % n, line[0] / n, white);
+            for (int r = 0; r < n * n; r++) {
+                if (after.stoneAt(r % n, r / n) != 0) continue;
+                Board defended = new Board(after);
+                defended.addStone(r % n, r / n, !white);
+                assertFalse(defended.hasFiveThrough(r % n, r / n, !white), where + " defence " + r + " wins");
+                assertNotNull(solver.solveVct(defended, white, new CancellationToken()), where + " defence " + r + " refutes the win");
+            }
+            wins++;
+        }
+        assertTrue(wins >= 12, "only " + wins + " VCT-only wins");
+    }
+
+    @Test
+    void openFourEnding() {
+        // black _XXX_ on row 7: the four at either end is open, so one block cannot stop it
+        Board b = new Board(15);
+        for (int x = 5; x <= 7; x++) b.addStone(x, 7, false);
+        b.addStone(0, 0, true);
+        b.addStone(14, 0, true);
+        b.addStone(0, 14, true);
+        int[] line = solver().solveVcf(b, false, new CancellationToken());
+        assertNotNull(line);
+        assertEquals(3, line.length);
+        Board four = new Board(b);
+        four.addStone(line[0] % 15, line[0] / 15, false);
+        assertEquals(2, fivePoints(four, false).size());
+        assertForcedWin(b, false, line, true, "open four");
+    }
+
+    @Test
+    void doubleFourEnding() {
+        // black threes on row 6 and column 6, each closed on the far side; (6, 6) makes two fours
+        Board b = new Board(15);
+        for (int i = 3; i <= 5; i++) {
+            b.addStone(i, 6, false);
+            b.addStone(6, i, false);
+        }
+        b.addStone(2, 6, true);
+        b.addStone(6, 2, true);
+        b.addStone(0, 14, true);
+        b.addStone(14, 14, true);
+        int[] line = solver().solveVcf(b, false, new CancellationToken());
+        assertNotNull(line);
+        assertEquals(3, line.length);
+        assertEquals(6 * 15 + 6, line[0]);
+        assertForcedWin(b, false, line, true, "double four");
+        // without the column three there is no win by fours
+        Board single = new Board(15);
+        for (int i = 3; i <= 5; i++) single.addStone(i, 6, false);
+        single.addStone(2, 6, true);
+        assertNull(solver().solveVcf(single, false, new CancellationToken()));
+    }
+
+    // Replays the line: attacker moves on empty cells that block any five point of the defender
+    // unless they make five, defender moves, for VCF, on a five point of the attacker, and a five
+    // at the end
+    private static void assertForcedWin(Board start, boolean white, int[] line, boolean vcf, String where) {
+        int n = start.getSize();
+        Board b = new Board(start);
+        assertEquals(1, line.length % 2, where + " ends with the attacker");
+        for (int i = 0; i < line.length; i += 2) {
+            int m = line[i];
+            List<Integer> threats = fivePoints(b, !white);
+            assertTrue(b.addStone(m % n, m / n, white), where + " attacker move " + i + " on an empty cell");
+            boolean five = b.hasFiveThrough(m % n, m / n, white);
+            if (i == line.length - 1) {
+                assertTrue(five, where + " line ends in a five");
+                return;
+            }
+            assertFalse(five, where + " five before the end at ply " + i);
+            // short of a five, the attacker has to block the defender's four
+            assertTrue(threats.size() <= 1, where + " defender has two fours at ply " + i);
+            if (!threats.isEmpty()) assertEquals(threats.get(0), m, where + " attacker ignores a four at ply " + i);
+            int d = line[i + 1];
+            List<Integer> fives = fivePoints(b, white);
+            // an open or double four can only be followed by the five
+            if (fives.size() > 1) assertEquals(line.length - 3, i, where + " line goes on after an open four");
+            if (vcf) {
+                assertFalse(fives.isEmpty(), where + " attacker move " + i + " is not a four");
+                assertTrue(fives.contains(d), where + " defence " + (i + 1) + " is not forced");
+            }
+            assertTrue(b.addStone(d % n, d / n, !white), where + " defender move " + (i + 1) + " on an empty cell");
+            assertFalse(b.hasFiveThrough(d % n, d / n, !white), where + " defender wins at ply " + (i + 1));
+        }
+    }
+
+    // Empty cells where a stone of the colour makes five
+    private static List<Integer> fivePoints(Board b, boolean white) {
+        int n = b.getSize();
+        List<Integer> points = new ArrayList<>();
+        for (int c = 0; c < n * n; c++) {
+            int x = c % n, y = c / n;
+            if (b.stoneAt(x, y) != 0) continue;
+            b.addStoneNoGUI(x, y, !white);
+            if (b.hasFiveThrough(x, y, white)) points.add(c);
+            b.removeStoneNoGUI(x, y);
+        }
+        return points;
+    }
+}